@@ -0,0 +1,92 @@
+/**
+ * 学習と走行で使う行動の集まりを表すクラス．行動ごとの回転角度と，行動のあとに前進する距離を持ち，
+ * 行動番号を受け取って仮想環境のロボットを動かす．ライントレースの７つの行動（ROTATIONS）は
+ * ここだけで定義する
+ */
+public class ActionSet
+{
+  /**
+   * 行動の集まりを生成する
+   * @param rotations 行動ごとの回転角度（度．正が時計回り．0 の行動は回転しない）
+   * @param forward   行動のあとに前進する距離 (cm)．0 の場合は前進しない
+   */
+  public ActionSet(int[] rotations, double forward)
+  {
+    this.rotations = rotations.clone();
+    this.forward   = forward;
+  }
+
+  /**
+   * 行動の数を取得する
+   * @return 行動の数
+   */
+  public int size()
+  {
+    return rotations.length;
+  }
+
+  /**
+   * 行動を実行する
+   * @param world  仮想環境
+   * @param action 行動番号（0〜size()-1）
+   */
+  public void apply(World world, int action)
+  {
+    // 回転しない行動では姿勢を変えない
+    int angle = rotations[action];
+    if (angle != 0)
+      world.rotateRobot(angle);
+    if (forward != 0.0)
+      world.forwardRobot(forward);
+  }
+
+  /**
+   * 行動の回転角度を取得する
+   * @param action 行動番号
+   * @return 回転角度（度）
+   */
+  public int getRotation(int action)
+  {
+    return rotations[action];
+  }
+
+  /**
+   * 行動ごとの回転角度を取得する
+   * @return 回転角度（度）の配列（複製）
+   */
+  public int[] getRotations()
+  {
+    return rotations.clone();
+  }
+
+  /**
+   * 同じ回転で，行動のあとに前進する距離だけ違う行動の集まりを生成する
+   * @param forward 行動のあとに前進する距離 (cm)．0 の場合は前進しない
+   * @return 行動の集まり
+   */
+  public ActionSet withForward(double forward)
+  {
+    return new ActionSet(rotations, forward);
+  }
+
+  /**
+   * 行動のあとに前進する距離を取得する
+   * @return 距離 (cm)
+   */
+  public double getForward()
+  {
+    return forward;
+  }
+
+  /** ライントレースの行動ごとの回転角度（度．正が時計回り．右に 10/20/30 度，左に 10/20/30 度，何もしない） */
+  private final static int[] ROTATIONS = { +10, +20, +30, -10, -20, -30, 0 };
+  /** MyRobot の学習で使う行動（回転だけで，前進しない） */
+  public final static ActionSet ROTATE = new ActionSet(ROTATIONS, 0.0);
+  /** MyRobot の走行で使う行動（回転してから 1cm 前進する） */
+  public final static ActionSet ROTATE_FORWARD = ROTATE.withForward(1.0);
+
+  /** 行動ごとの回転角度 */
+  private final int[] rotations;
+  /** 行動のあとに前進する距離 (cm) */
+  private final double forward;
+}
@@ -0,0 +1,142 @@
+
+/**
+ * Ｑテーブルの行（状態）ごとに、最大のＱ値・その行動・最大値と等しい行動の数を覚えておくクラス
+ * 
+ * QLearning と HashedQTable で共通に使う。Ｑ値は呼び出し側の配列（行ごとに行動の順に
+ * 並べたもの）に持ち、書き換えは store を通して行う。最大値を覚えておくので、Greedy な
+ * 行動選択と遷移後の状態の最大値を求めるときに表を走査しない
+ */
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class BestActionCache {
+
+	/**
+	 * 全てのＱ値が０の行を持つオブジェクトを生成する
+	 * 
+	 * @param rows    行数
+	 * @param actions 行動数
+	 */
+	public BestActionCache(int rows, int actions) {
+		this.actions = actions;
+		this.bestAction = new int[rows];
+		this.bestValue = new double[rows];
+		this.bestCount = new int[rows];
+		//最初は全て０なので、全ての行動が最大値と等しい
+		Arrays.fill(bestCount, actions);
+	}
+
+	/**
+	 * 行数を増やす（増やした行のＱ値は全て０とみなす）
+	 * 
+	 * @param rows 新しい行数
+	 */
+	public void grow(int rows) {
+		int old = bestAction.length;
+		bestAction = Arrays.copyOf(bestAction, rows);
+		bestValue = Arrays.copyOf(bestValue, rows);
+		bestCount = Arrays.copyOf(bestCount, rows);
+		Arrays.fill(bestCount, old, rows, actions);
+	}
+
+	/**
+	 * Ｑ値を書き換え、行の最大値を更新する
+	 * 
+	 * @param qTable Ｑ値の配列
+	 * @param row    行
+	 * @param action 行動
+	 * @param value  新しいＱ値
+	 */
+	public void store(double[] qTable, int row, int action, double value) {
+		int i = row * actions + action;
+		double old = qTable[i];
+		qTable[i] = value;
+
+		double best = bestValue[row];
+		if (value > best) {
+			//最大値を更新した
+			bestValue[row] = value;
+			bestAction[row] = action;
+			bestCount[row] = 1;
+		} else if (old == best && value < best) {
+			//最大値だった行動が下がった。他にも最大値があり、代表の行動でなければ数を減らすだけ
+			if (bestCount[row] > 1 && action != bestAction[row])
+				bestCount[row]--;
+			else
+				rescan(qTable, row);
+		} else if (old != best && value == best) {
+			//最大値と等しくなった
+			bestCount[row]++;
+			if (action < bestAction[row])
+				bestAction[row] = action;
+		}
+	}
+
+	/**
+	 * 行を走査して最大値を求め直す（Ｑ値の配列をまとめて書き換えた場合など）
+	 * 
+	 * @param qTable Ｑ値の配列
+	 * @param row    行
+	 */
+	public void rescan(double[] qTable, int row) {
+		int base = row * actions;
+		int max = 0;
+		int count = 1;
+		for (int i = 1; i < actions; i++) {
+			if (qTable[base + i] > qTable[base + max]) {
+				max = i;
+				count = 1;
+			} else if (qTable[base + i] == qTable[base + max]) {
+				count++;
+			}
+		}
+		bestAction[row] = max;
+		bestValue[row] = qTable[base + max];
+		bestCount[row] = count;
+	}
+
+	/**
+	 * Ｑ値が最大の行動を選択する。最大値が複数ある場合はその中からランダムに選ぶ
+	 * 
+	 * @param qTable Ｑ値の配列
+	 * @param row    行
+	 * @param rand   乱数
+	 * @return 選択された行動番号
+	 */
+	//値が等しいQ値が複数あったとしても、特定の方向だけ選択するというような事を防いでいる。
+	//最大値が一つしか無い場合は覚えておいた行動をそのまま返すので、表を走査しない
+	public int greedyAction(double[] qTable, int row, SplittableRandom rand) {
+		if (bestCount[row] == 1)
+			return bestAction[row];
+		//最大値と等しい行動のうち k 番目を選ぶ
+		int k = rand.nextInt(bestCount[row]);
+		int base = row * actions;
+		for (int i = 0; i < actions; i++) {
+			if (qTable[base + i] == bestValue[row] && k-- == 0)
+				return i;
+		}
+		return bestAction[row];
+	}
+
+	//行の最大のＱ値の行動を返す（最大値が複数ある場合は番号が最も小さい行動）
+	public int getBestAction(int row) {
+		return bestAction[row];
+	}
+
+	//行の最大のＱ値を返す
+	public double getBestValue(int row) {
+		return bestValue[row];
+	}
+
+	//先頭から rows 行分の最大のＱ値の行動を配列にして返す
+	public int[] copyBestActions(int rows) {
+		return Arrays.copyOf(bestAction, rows);
+	}
+
+	// フィールド
+	private int actions = 0;
+	//行ごとの最大のＱ値、その行動（番号が最も小さいもの）、最大値と等しい行動の数
+	private int bestAction[] = null;
+	private double bestValue[] = null;
+	private int bestCount[] = null;
+}
@@ -51,6 +51,12 @@ public class ControlToolBar extends JToolBar {
     speedController.setPaintTicks(true);
     speedController.addChangeListener(model);
     add(speedController);
+    // 描画１回あたりのステップ数の選択
+    stepsPerFrame = new JComboBox<String>(STEPS_PER_FRAME_LABELS);
+    stepsPerFrame.setToolTipText("Steps per frame");
+    stepsPerFrame.setMaximumSize(stepsPerFrame.getPreferredSize());
+    stepsPerFrame.addActionListener(buttonListener);
+    add(stepsPerFrame);
     // 画面表示ボタン
     icon = new ImageIcon(c.getResource("icon-hide.png"));
     show = new JToggleButton(icon);
@@ -96,6 +102,8 @@ public class ControlToolBar extends JToolBar {
         status = ST_PAUSE;
       else if (src == stop && model.requestStop()) 
         status = ST_STOP;
+      else if (src == stepsPerFrame)
+        model.setStepsPerFrame(STEPS_PER_FRAME[stepsPerFrame.getSelectedIndex()]);
       else if (src == show) {
         if (show.isSelected()) {
           // 描画する場合
@@ -104,6 +112,9 @@ public class ControlToolBar extends JToolBar {
           // 実行速度を元に戻す
           if (speedController.getValue() == speedController.getMaximum())
             speedController.setValue(speedBackup);
+          // 描画１回あたりのステップ数を元に戻す（選択を変えると model にも通知される）
+          if (stepsPerFrame.getSelectedIndex() == STEPS_PER_FRAME.length - 1)
+            stepsPerFrame.setSelectedIndex(stepsPerFrameBackup);
         }
         else {
           // 描画しない場合
@@ -112,6 +123,9 @@ public class ControlToolBar extends JToolBar {
           // 実行速度をバックアップし，最速に設定する
           speedBackup = speedController.getValue();
           speedController.setValue(speedController.getMaximum());
+          // 描画１回あたりのステップ数もバックアップし，待たずに実行する (Max) に設定する
+          stepsPerFrameBackup = stepsPerFrame.getSelectedIndex();
+          stepsPerFrame.setSelectedIndex(STEPS_PER_FRAME.length - 1);
         }
       }
       
@@ -142,6 +156,8 @@ public class ControlToolBar extends JToolBar {
   private int status = ST_STOP;
   /** 実行速度のバックアップ */
   private int speedBackup = 0;
+  /** 描画１回あたりのステップ数の選択のバックアップ */
+  private int stepsPerFrameBackup = 0;
 
   /** 状態：実行状態 */
   private final static int ST_PLAY = 1;
@@ -160,6 +176,13 @@ public class ControlToolBar extends JToolBar {
   private JSlider speedController = null;
   /** 画面表示ボタン */
   private JToggleButton show = null;
+  /** 描画１回あたりのステップ数の選択 */
+  private JComboBox<String> stepsPerFrame = null;
+
+  /** 描画１回あたりのステップ数の選択肢 */
+  private final static String[] STEPS_PER_FRAME_LABELS = { "x1", "x10", "x100", "x1000", "Max" };
+  /** 選択肢ごとの描画１回あたりのステップ数 */
+  private final static int[] STEPS_PER_FRAME = { 1, 10, 100, 1000, SimulationClock.UNTHROTTLED };
 
   /** ボタンアクションリスナー */
   private ActionListener buttonListener = new ButtonListener();
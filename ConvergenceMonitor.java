@@ -0,0 +1,170 @@
+
+/**
+ * Ｑ学習の収束を判定するクラス
+ * 
+ * 試行（エピソード）ごとに時間差分誤差の絶対値の最大値・平均値と、Greedy 方策
+ * （状態ごとの最大Ｑ値の行動）が変わった状態の数を集計する。
+ * 
+ * 学習率が一定で状態が粗い場合、誤差は０にはならず一定の大きさで揺れ続けるので、
+ * 誤差の大きさそのものではなく「平均誤差がそれまでの最小値から一定の割合以上
+ * 下がらなくなった」ことを見る。方策の変化が指定数以下で、平均誤差が最小値の前後
+ * 一定の割合の範囲に留まる（下がりも上がりもしない）試行が指定回数続いたら収束したとみなす
+ * 
+ * HashedQTable のように学習中に状態が増える表では、試行の間に初めて訪れた状態も
+ * 方策が変わった状態として数える
+ */
+import java.util.Arrays;
+
+public class ConvergenceMonitor {
+
+	/**
+	 * 収束判定を行うオブジェクトを生成する
+	 * 
+	 * @param q         学習中のＱテーブル
+	 * @param tolerance 平均誤差が変わらないとみなす割合（0.05 なら最小値の前後 5% の範囲）
+	 * @param patience  条件を満たす試行が何回続いたら収束とみなすか
+	 */
+	public ConvergenceMonitor(QTable q, double tolerance, int patience) {
+		this.q = q;
+		this.tolerance = tolerance;
+		this.patience = patience;
+		this.policy = new int[q.getStates()];
+	}
+
+	/**
+	 * 方策が変わらないとみなす、変化した状態の数の上限を設定する（初期値は０）
+	 * 
+	 * 全ての行動が悪い状態（ラインを見失った状態など）では最大値の行動が入れ替わり続けるので、
+	 * その分を許す
+	 * 
+	 * @param maxPolicyChanges 変化した状態の数の上限
+	 */
+	public void setMaxPolicyChanges(int maxPolicyChanges) {
+		this.maxPolicyChanges = maxPolicyChanges;
+	}
+
+	/**
+	 * 平均誤差をならす割合を設定する（初期値は 1.0 で、ならさない）
+	 * 
+	 * 試行ごとの平均誤差は学習が進んだ後も試行によって大きく揺れるので、そのまま最小値と
+	 * 比べると、たまたま小さかった試行の値から外れ続けて収束とみなせない。その場合は
+	 * 試行ごとに smoothing の割合だけ新しい値に近づけた値（指数移動平均）で判定する
+	 * 
+	 * @param smoothing 新しい試行の平均誤差を取り入れる割合（0.0〜1.0）
+	 */
+	public void setSmoothing(double smoothing) {
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * 試行の開始時に呼ぶ。その時点の Greedy 方策を覚えておく
+	 */
+	public void beginEpisode() {
+		known = q.getStates();
+		if (policy.length < known)
+			policy = Arrays.copyOf(policy, known);
+		for (int i = 0; i < known; i++)
+			policy[i] = q.selectAction(q.getState(i));
+		maxError = 0;
+		sumError = 0;
+		updates = 0;
+	}
+
+	/**
+	 * 時間差分誤差を記録する（QLearning.update() の戻り値を渡す）
+	 * 
+	 * @param tdError 時間差分誤差
+	 */
+	public void record(double tdError) {
+		double e = Math.abs(tdError);
+		if (e > maxError)
+			maxError = e;
+		sumError += e;
+		updates++;
+	}
+
+	/**
+	 * 試行の終了時に呼び、収束したかどうかを判定する
+	 * 
+	 * @return 収束した場合は true
+	 */
+	public boolean endEpisode() {
+		//試行の間に初めて訪れた状態は変わったとみなす
+		policyChanges = q.getStates() - known;
+		for (int i = 0; i < known; i++) {
+			if (q.selectAction(q.getState(i)) != policy[i])
+				policyChanges++;
+		}
+		episodes++;
+
+		//平均誤差をならし、最小値から十分に下がったか、最小値から一定の割合以上上がったかを見る
+		double mean = getMeanError();
+		smoothedError = (episodes == 1) ? mean : smoothedError + smoothing * (mean - smoothedError);
+		boolean improved = smoothedError < bestMeanError * (1 - tolerance);
+		boolean regressed = smoothedError > bestMeanError * (1 + tolerance);
+		if (smoothedError < bestMeanError)
+			bestMeanError = smoothedError;
+
+		//平均誤差が最小値の前後 tolerance の範囲に留まった試行だけを数える
+		if (policyChanges <= maxPolicyChanges && !improved && !regressed)
+			stableEpisodes++;
+		else
+			stableEpisodes = 0;
+		return isConverged();
+	}
+
+	/**
+	 * 収束したかどうか
+	 * 
+	 * @return 条件を満たす試行が patience 回続いていれば true
+	 */
+	public boolean isConverged() {
+		return stableEpisodes >= patience;
+	}
+
+	//終了した試行の数を返す
+	public int getEpisodes() {
+		return episodes;
+	}
+
+	//直前の試行の時間差分誤差の絶対値の最大値を返す
+	public double getMaxError() {
+		return maxError;
+	}
+
+	//直前の試行の時間差分誤差の絶対値の平均値を返す
+	public double getMeanError() {
+		return updates == 0 ? 0 : sumError / updates;
+	}
+
+	//収束の判定に使う、ならした平均誤差を返す
+	public double getSmoothedError() {
+		return smoothedError;
+	}
+
+	//直前の試行で Greedy 方策が変わった状態の数を返す
+	public int getPolicyChanges() {
+		return policyChanges;
+	}
+
+	// フィールド
+	private QTable q = null;
+	private double tolerance = 0;
+	private int patience = 0;
+	private int maxPolicyChanges = 0;
+	private double smoothing = 1;
+	//試行開始時の Greedy 方策と、そのときの状態の数
+	private int policy[] = null;
+	private int known = 0;
+	//直前の試行の集計
+	private double maxError = 0;
+	private double sumError = 0;
+	private int updates = 0;
+	private int policyChanges = 0;
+	//ならした平均誤差と、その最小値
+	private double smoothedError = 0;
+	private double bestMeanError = Double.POSITIVE_INFINITY;
+	//終了した試行の数と、条件を満たす試行が続いている回数
+	private int episodes = 0;
+	private int stableEpisodes = 0;
+}
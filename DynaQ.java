@@ -0,0 +1,115 @@
+
+/**
+ * Dyna-Q によるＱ学習を行うクラス
+ * 
+ * 実際に経験した遷移を数えて、状態・行動ごとの遷移先と報酬のモデルを作る。
+ * 実際の１ステップごとに、モデルから遷移を K 回作ってＱ値を更新する（計画）ので、
+ * シミュレーションのステップ数が少なくても学習が進む。モデルは回数と報酬の合計を
+ * 配列に持つだけなので、計画でオブジェクトを生成しない
+ * 
+ * 行動選択や学習済みのＱテーブルの扱いは QLearning と同じ。実際の遷移は update の
+ * 代わりに learn に渡す
+ */
+import java.util.SplittableRandom;
+
+public class DynaQ extends QLearning {
+
+	/**
+	 * Dyna-Q によるＱ学習を行うオブジェクトを生成する
+	 * 
+	 * @param states        状態数
+	 * @param actions       行動数
+	 * @param alpha         学習率（0.0〜1.0）
+	 * @param gamma         割引率（0.0〜1.0）
+	 * @param planningSteps 実際の１ステップごとに計画で更新する回数（K）
+	 * @param seed          乱数の種
+	 */
+	public DynaQ(int states, int actions, double alpha, double gamma, int planningSteps, long seed) {
+		super(states, actions, alpha, gamma, seed);
+		this.planningSteps = planningSteps;
+		//計画の乱数は行動選択の乱数と別に持つ
+		this.rand = new SplittableRandom(seed).split();
+		this.counts = new int[states * actions * states];
+		this.rewards = new double[states * actions * states];
+		this.visits = new int[states * actions];
+		this.observed = new int[states * actions];
+	}
+
+	/**
+	 * 実際に経験した遷移でＱ値を更新し、モデルに記録してから計画を行う
+	 * 
+	 * @param before 状態
+	 * @param action 行動
+	 * @param after  遷移後の状態
+	 * @param reward 報酬
+	 * @return 実際の遷移での時間差分誤差
+	 */
+	public double learn(int before, int action, int after, double reward) {
+		double tdError = update(before, action, after, reward);
+		record(before, action, after, reward);
+		plan(planningSteps);
+		return tdError;
+	}
+
+	/**
+	 * 遷移をモデルに記録する
+	 * 
+	 * @param before 状態
+	 * @param action 行動
+	 * @param after  遷移後の状態
+	 * @param reward 報酬
+	 */
+	private void record(int before, int action, int after, double reward) {
+		int sa = before * getActions() + action;
+		if (visits[sa]++ == 0)
+			observed[observedCount++] = sa;
+		int i = sa * getStates() + after;
+		counts[i]++;
+		rewards[i] += reward;
+	}
+
+	/**
+	 * モデルから遷移を作ってＱ値を更新する。経験したことのある状態・行動を等確率で選び、
+	 * 遷移先は経験した回数に比例する確率で、報酬はその遷移先での平均とする
+	 * 
+	 * @param n 更新する回数
+	 */
+	public void plan(int n) {
+		if (observedCount == 0)
+			return;
+		int states = getStates();
+		int actions = getActions();
+		for (int k = 0; k < n; k++) {
+			int sa = observed[rand.nextInt(observedCount)];
+			int r = rand.nextInt(visits[sa]);
+			int base = sa * states;
+			int after = 0;
+			while ((r -= counts[base + after]) >= 0)
+				after++;
+			update(sa / actions, sa % actions, after, rewards[base + after] / counts[base + after]);
+		}
+	}
+
+	//計画で更新する回数を設定する
+	public void setPlanningSteps(int planningSteps) {
+		this.planningSteps = planningSteps;
+	}
+
+	//計画で更新する回数を返す
+	public int getPlanningSteps() {
+		return planningSteps;
+	}
+
+	// フィールド
+	private int planningSteps = 0;
+	//計画に使う乱数
+	private SplittableRandom rand = null;
+	//状態×行動×遷移後の状態ごとの回数と報酬の合計
+	private int counts[] = null;
+	private double rewards[] = null;
+	//状態×行動ごとの回数
+	private int visits[] = null;
+	//経験したことのある状態・行動（状態×行動数＋行動）の一覧と、その数
+	private int observed[] = null;
+	private int observedCount = 0;
+}
@@ -0,0 +1,215 @@
+/**
+ * 学習の試行（エピソード）の終了条件を判定するクラス．仮想環境ごとに一つあり，
+ * World.init() で新しい試行が始まる．行動を一回実行するたびに step() を呼ぶと，
+ * ゴールに到達した・マップの外に出た・ラインを見失い続けた・進まなくなった・
+ * ステップ数の上限に達した，のいずれかで試行を打ち切り，その理由を記録する
+ */
+public class Episode
+{
+  /**
+   * 終了条件を生成する．初期状態ではゴールとマップの外に出た場合だけ終了する
+   * @param world 仮想環境
+   */
+  public Episode(World world)
+  {
+    this.world = world;
+  }
+
+  /**
+   * 新しい試行を始める（World.init() から呼ばれる）
+   */
+  public void reset()
+  {
+    steps     = 0;
+    lostSteps = 0;
+    reason    = RUNNING;
+    anchorX   = world.getRobotX();
+    anchorY   = world.getRobotY();
+  }
+
+  /**
+   * ラインを見失ったまま何ステップ続いたら終了するかを設定する
+   * @param steps ステップ数（0 の場合は判定しない）
+   */
+  public void setMaxLostSteps(int steps)
+  {
+    maxLostSteps = steps;
+  }
+
+  /**
+   * 進んでいないと判定する条件を設定する．window ステップごとに，その間に
+   * distance (cm) 以上離れた位置に移動していなければ終了する
+   * @param window   判定の間隔（ステップ数．0 の場合は判定しない）
+   * @param distance 進んだとみなす距離 (cm)
+   */
+  public void setProgressWindow(int window, double distance)
+  {
+    progressWindow   = window;
+    progressDistance = distance;
+  }
+
+  /**
+   * １試行あたりのステップ数の上限を設定する
+   * @param steps ステップ数（0 の場合は上限なし）
+   */
+  public void setMaxSteps(int steps)
+  {
+    maxSteps = steps;
+  }
+
+  /**
+   * 行動を一回実行したあとに呼び，試行を続けるかどうか判定する．
+   * 一度終了した試行は reset() まで同じ理由を返し続ける
+   * @return 終了した理由．続ける場合は RUNNING
+   */
+  public int step()
+  {
+    if (reason != RUNNING)
+      return reason;
+    steps++;
+
+    int sensors = world.readSensors();
+    int a = Robot.sensorColor(sensors, Robot.LIGHT_A);
+    int b = Robot.sensorColor(sensors, Robot.LIGHT_B);
+    int c = Robot.sensorColor(sensors, Robot.LIGHT_C);
+
+    // ゴール
+    if (a == Robot.GREEN || b == Robot.GREEN || c == Robot.GREEN)
+      return finish(GOAL);
+
+    // ロボットの中心がマップの外（マップの外はずっと白なので戻ってこられない）
+    LineMap lineMap = world.getLineMap();
+    double x = world.getRobotX();
+    double y = world.getRobotY();
+    if (x < 0 || y < 0 || x >= lineMap.getWidth() || y >= lineMap.getHeight())
+      return finish(OFF_MAP);
+
+    // ラインを見失ったまま
+    if (a == Robot.WHITE && b == Robot.WHITE && c == Robot.WHITE)
+      lostSteps++;
+    else
+      lostSteps = 0;
+    if (maxLostSteps > 0 && lostSteps >= maxLostSteps)
+      return finish(LOST_LINE);
+
+    // 進んでいない
+    if (progressWindow > 0 && steps % progressWindow == 0) {
+      double dx = (x - anchorX) * World.cmPerPixel;
+      double dy = (y - anchorY) * World.cmPerPixel;
+      if (dx * dx + dy * dy < progressDistance * progressDistance)
+        return finish(NO_PROGRESS);
+      anchorX = x;
+      anchorY = y;
+    }
+
+    // ステップ数の上限
+    if (maxSteps > 0 && steps >= maxSteps)
+      return finish(STEP_LIMIT);
+
+    return RUNNING;
+  }
+
+  /**
+   * 試行を終了し，理由を記録する
+   * @param why 終了した理由
+   * @return 終了した理由
+   */
+  private int finish(int why)
+  {
+    reason = why;
+    counts[why]++;
+    return why;
+  }
+
+  /**
+   * 試行が終了したかどうか
+   * @return 終了した場合は true を返す
+   */
+  public boolean isDone()
+  {
+    return reason != RUNNING;
+  }
+
+  /**
+   * 試行が終了した理由を取得する
+   * @return 終了した理由．続いている場合は RUNNING
+   */
+  public int getReason()
+  {
+    return reason;
+  }
+
+  /**
+   * 今の試行のステップ数を取得する
+   * @return ステップ数
+   */
+  public int getSteps()
+  {
+    return steps;
+  }
+
+  /**
+   * これまでにその理由で終了した試行の数を取得する
+   * @param why 終了した理由
+   * @return 試行の数
+   */
+  public int getCount(int why)
+  {
+    return counts[why];
+  }
+
+  /**
+   * 終了した理由の名前を取得する
+   * @param why 終了した理由
+   * @return 名前
+   */
+  public static String reasonName(int why)
+  {
+    switch (why) {
+    case RUNNING:     return "running";
+    case GOAL:        return "goal";
+    case OFF_MAP:     return "off map";
+    case LOST_LINE:   return "lost line";
+    case NO_PROGRESS: return "no progress";
+    case STEP_LIMIT:  return "step limit";
+    }
+    return "unknown";
+  }
+
+  /** 終了した理由：続いている */
+  public final static int RUNNING     = 0;
+  /** 終了した理由：ゴールに到達した */
+  public final static int GOAL        = 1;
+  /** 終了した理由：マップの外に出た */
+  public final static int OFF_MAP     = 2;
+  /** 終了した理由：ラインを見失ったまま続いた */
+  public final static int LOST_LINE   = 3;
+  /** 終了した理由：進んでいない */
+  public final static int NO_PROGRESS = 4;
+  /** 終了した理由：ステップ数の上限 */
+  public final static int STEP_LIMIT  = 5;
+
+  /** 仮想環境 */
+  private final World world;
+  /** ラインを見失ったまま続いたら終了するステップ数 */
+  private int maxLostSteps = 0;
+  /** 進んでいるか判定する間隔（ステップ数） */
+  private int progressWindow = 0;
+  /** 進んだとみなす距離 (cm) */
+  private double progressDistance = 0.0;
+  /** １試行あたりのステップ数の上限 */
+  private int maxSteps = 0;
+
+  /** 今の試行のステップ数 */
+  private int steps = 0;
+  /** ラインを見失ったまま続いているステップ数 */
+  private int lostSteps = 0;
+  /** 前回進んでいるか判定したときのＸ座標 */
+  private double anchorX = 0.0;
+  /** 前回進んでいるか判定したときのＹ座標 */
+  private double anchorY = 0.0;
+  /** 終了した理由 */
+  private int reason = RUNNING;
+  /** 理由ごとの終了した試行の数 */
+  private final int[] counts = new int[STEP_LIMIT + 1];
+}
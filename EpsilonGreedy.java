@@ -0,0 +1,59 @@
+
+/**
+ * epsilon-Greedy 法で行動を選択するクラス
+ * 
+ * QLearning.selectAction(state, epsilon, actionNumber) と違い、epsilon は
+ * ランダムに行動を選択する確率を表す。試行ごとに epsilon に decay を掛けて、
+ * 下限 minEpsilon まで減らす（decay が 1.0 なら一定）
+ */
+import java.util.SplittableRandom;
+
+public class EpsilonGreedy implements ExplorationStrategy {
+
+	/**
+	 * epsilon が一定の epsilon-Greedy 法
+	 * 
+	 * @param epsilon ランダムに行動を選択する確率（0.0〜1.0）
+	 * @param seed    乱数の種
+	 */
+	public EpsilonGreedy(double epsilon, long seed) {
+		this(epsilon, epsilon, 1.0, seed);
+	}
+
+	/**
+	 * epsilon が試行ごとに減っていく epsilon-Greedy 法
+	 * 
+	 * @param epsilon    最初の試行でランダムに行動を選択する確率（0.0〜1.0）
+	 * @param minEpsilon epsilon の下限
+	 * @param decay      試行ごとに epsilon に掛ける値（0.0〜1.0）
+	 * @param seed       乱数の種
+	 */
+	public EpsilonGreedy(double epsilon, double minEpsilon, double decay, long seed) {
+		this.epsilon = epsilon;
+		this.minEpsilon = minEpsilon;
+		this.decay = decay;
+		this.rand = new SplittableRandom(seed);
+	}
+
+	public int selectAction(QTable q, long state) {
+		if (rand.nextDouble() < epsilon)
+			return rand.nextInt(q.getActions());
+		//最大値が複数ある場合はその中からランダムに選ぶ
+		return q.selectGreedyAction(state);
+	}
+
+	public void endEpisode() {
+		epsilon = Math.max(minEpsilon, epsilon * decay);
+	}
+
+	//今の epsilon を返す
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	// フィールド
+	private double epsilon = 0;
+	private double minEpsilon = 0;
+	private double decay = 1;
+	private SplittableRandom rand = null;
+}
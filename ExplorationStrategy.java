@@ -0,0 +1,23 @@
+
+/**
+ * Ｑ学習で行動を選択する方法（探索の仕方）を表すインタフェース
+ * 
+ * QLearning・HashedQTable の selectAction(state, strategy) から呼ばれる。行動選択のたびにオブジェクトを
+ * 生成しないように実装する
+ */
+public interface ExplorationStrategy {
+
+	/**
+	 * 行動を選択する
+	 * 
+	 * @param q     学習中のＱテーブル
+	 * @param state 現在の状態
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(QTable q, long state);
+
+	/**
+	 * 試行（エピソード）の終わりに呼ぶ。学習が進むにつれて探索を減らす場合などに使う
+	 */
+	public void endEpisode();
+}
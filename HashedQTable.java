@@ -0,0 +1,252 @@
+
+/**
+ * 状態を long 型の番号で表すＱテーブル
+ * 
+ * 状態の番号から行への対応をオープンアドレス法のハッシュ表で持ち、訪れた状態の行だけを
+ * 作るので、状態の番号が大きく（センサの履歴や向きなどを組み合わせた状態など）ても、
+ * 使うメモリは訪れた状態の数に比例する。キーも値もプリミティブ型の配列に持つので、
+ * 検索・更新でオブジェクトを生成しない
+ * 
+ * 行動選択と更新は QLearning と同じ（まだ訪れていない状態のＱ値は全て０）。どちらも QTable を
+ * 実装し、状態ごとの最大値は同じ BestActionCache で覚えておく
+ */
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class HashedQTable implements QTable {
+
+	/**
+	 * Ｑテーブルを生成する
+	 * 
+	 * @param actions 行動数
+	 * @param alpha   学習率（0.0〜1.0）
+	 * @param gamma   割引率（0.0〜1.0）
+	 * @param seed    乱数の種
+	 */
+	public HashedQTable(int actions, double alpha, double gamma, long seed) {
+		this.actions = actions;
+		this.alpha = alpha;
+		this.gamma = gamma;
+		this.rand = new SplittableRandom(seed);
+		//ハッシュ表は２のべき乗の大きさにして、半分埋まったら広げる
+		this.keys = new long[INITIAL_SLOTS];
+		this.rows = new int[INITIAL_SLOTS];
+		//行は訪れた状態の順に詰めて持つ
+		this.qTable = new double[INITIAL_ROWS * actions];
+		this.states = new long[INITIAL_ROWS];
+		this.best = new BestActionCache(INITIAL_ROWS, actions);
+	}
+
+	/**
+	 * epsilon-Greedy 法により行動を選択する
+	 * 
+	 * @param state        現在の状態
+	 * @param epsilon      Ｑ値が最大の行動を選択する確率（0.0〜1.0）
+	 * @param actionNumber 行動数
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(long state, double epsilon, int actionNumber) {
+		int num = rand.nextInt(100);
+		if (num < 100 * epsilon)
+			return greedyAction(find(state));
+		return rand.nextInt(actionNumber);
+	}
+
+	/**
+	 * Greedy 法により行動を選択する（最大値が複数ある場合は番号が最も小さい行動）
+	 * 
+	 * @param state 現在の状態
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(long state) {
+		int row = find(state);
+		return (row < 0) ? 0 : best.getBestAction(row);
+	}
+
+	/**
+	 * Ｑ値が最大の行動を選択する。最大値が複数ある場合はその中からランダムに選ぶ
+	 * 
+	 * @param state 現在の状態
+	 * @return 選択された行動番号
+	 */
+	public int selectGreedyAction(long state) {
+		return greedyAction(find(state));
+	}
+
+	/**
+	 * 指定した方法（ExplorationStrategy）で行動を選択する
+	 * 
+	 * @param state    現在の状態
+	 * @param strategy 行動を選択する方法
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(long state, ExplorationStrategy strategy) {
+		return strategy.selectAction(this, state);
+	}
+
+	/**
+	 * Ｑ値を更新する
+	 * 
+	 * @param before 状態
+	 * @param action 行動
+	 * @param after  遷移後の状態
+	 * @param reward 報酬
+	 * @return 時間差分誤差
+	 */
+	public double update(long before, int action, long after, double reward) {
+		double next = getMaxValue(after);
+		int row = insert(before);
+		double q = qTable[row * actions + action];
+		double tdError = reward + gamma * next - q;
+		best.store(qTable, row, action, q + alpha * tdError);
+		return tdError;
+	}
+
+	/**
+	 * Ｑ値が最大の行動を選択する。最大値が複数ある場合はその中からランダムに選ぶ
+	 * 
+	 * @param row 状態の行（まだ訪れていない状態は -1）
+	 * @return 選択された行動番号
+	 */
+	private int greedyAction(int row) {
+		//まだ訪れていない状態は全ての行動が同じ値
+		if (row < 0)
+			return rand.nextInt(actions);
+		return best.greedyAction(qTable, row, rand);
+	}
+
+	/**
+	 * 状態の行を探す
+	 * 
+	 * @param state 状態の番号
+	 * @return 行（まだ訪れていない場合は -1）
+	 */
+	private int find(long state) {
+		int mask = keys.length - 1;
+		for (int i = hash(state) & mask;; i = (i + 1) & mask) {
+			//rows には行番号＋１を入れる（０は空き）
+			if (rows[i] == 0)
+				return -1;
+			if (keys[i] == state)
+				return rows[i] - 1;
+		}
+	}
+
+	/**
+	 * 状態の行を探し、無ければ作る
+	 * 
+	 * @param state 状態の番号
+	 * @return 行
+	 */
+	private int insert(long state) {
+		int mask = keys.length - 1;
+		int i = hash(state) & mask;
+		for (; rows[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == state)
+				return rows[i] - 1;
+		}
+
+		//新しい行を作る（全て０なので、全ての行動が最大値）
+		int row = size++;
+		if (row == states.length) {
+			qTable = Arrays.copyOf(qTable, qTable.length * 2);
+			states = Arrays.copyOf(states, states.length * 2);
+			best.grow(states.length);
+		}
+		states[row] = state;
+		keys[i] = state;
+		rows[i] = row + 1;
+
+		if (size * 2 > keys.length)
+			grow();
+		return row;
+	}
+
+	/**
+	 * ハッシュ表を２倍に広げる
+	 */
+	private void grow() {
+		long oldKeys[] = keys;
+		int oldRows[] = rows;
+		keys = new long[oldKeys.length * 2];
+		rows = new int[oldRows.length * 2];
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldRows[j] == 0)
+				continue;
+			int i = hash(oldKeys[j]) & mask;
+			while (rows[i] != 0)
+				i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			rows[i] = oldRows[j];
+		}
+	}
+
+	//状態の番号をかき混ぜる（近い番号が同じ場所に集まらないようにする）
+	private static int hash(long key) {
+		key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+		key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return (int) (key ^ (key >>> 33));
+	}
+
+	public void showQTable() {
+		System.out.println("/////////////////////////");
+		for (int i = 0; i < keys.length; i++) {
+			if (rows[i] == 0)
+				continue;
+			int row = rows[i] - 1;
+			System.out.print("S " + keys[i] + " : ");
+			for (int j = 0; j < actions; j++) {
+				System.out.print(qTable[row * actions + j] + " ");
+			}
+			System.out.println();
+		}
+	}
+
+	// 定数
+	private static final int INITIAL_SLOTS = 64;
+	private static final int INITIAL_ROWS = 16;
+
+	// フィールド
+	private int actions = 0;
+	private double alpha = 0;
+	private double gamma = 0;
+	//ハッシュ表：状態の番号と、その行番号＋１（０は空き）
+	private long keys[] = null;
+	private int rows[] = null;
+	//訪れた状態の数
+	private int size = 0;
+	//行ごとのＱ値と状態の番号、最大のＱ値・その行動・最大値と等しい行動の数
+	private double qTable[] = null;
+	private long states[] = null;
+	private BestActionCache best = null;
+	//行動選択に使う乱数
+	private SplittableRandom rand = null;
+
+	//指定されたQTableの値を返す（まだ訪れていない状態は０）
+	public double getQTable(long state, int action) {
+		int row = find(state);
+		return (row < 0) ? 0 : qTable[row * actions + action];
+	}
+
+	//状態の最大のＱ値を返す（まだ訪れていない状態は０）
+	public double getMaxValue(long state) {
+		int row = find(state);
+		return (row < 0) ? 0 : best.getBestValue(row);
+	}
+
+	//訪れた状態の数を返す
+	public int getStates() {
+		return size;
+	}
+
+	//index 番目に訪れた状態の番号を返す
+	public long getState(int index) {
+		return states[index];
+	}
+
+	//行動数を返す
+	public int getActions() {
+		return actions;
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * 画面を持たないシミュレータクラス．スレッドも待ち時間も使わず，ロボットのプログラムを
+ * 呼び出し元のスレッドで最高速度で実行する（java.awt.headless=true で動作する）
+ */
+public class HeadlessSimulator implements SimulationEngine
+{
+  /**
+   * 画面を持たないシミュレータを生成する
+   * @param robot   ロボットオブジェクト
+   * @param lineMap 色判定済みのマップ（複数のシミュレータで共有してよい）
+   */
+  public HeadlessSimulator(Robot robot, LineMap lineMap)
+  {
+    // 仮想環境の生成
+    world = new World(lineMap);
+
+    // ロボットオブジェクトを保存
+    this.robot = robot;
+    // ロボットに実行環境を登録
+    robot.setEngine(this);
+  }
+
+  /**
+   * 画面を持たないシミュレータを生成する
+   * @param className 動作プログラム名(クラス名)
+   * @param mapName   マップ画像のファイル名
+   */
+  public HeadlessSimulator(String className, String mapName) throws Exception
+  {
+    this(createRobot(className), LineMap.load(mapName));
+  }
+
+  /**
+   * クラス名からロボットオブジェクトを生成する
+   * @param className 動作プログラム名(クラス名)
+   * @return ロボットオブジェクト
+   */
+  public static Robot createRobot(String className) throws Exception
+  {
+    return (Robot)Class.forName(className).getDeclaredConstructor().newInstance();
+  }
+
+  /**
+   * ロボットのプログラムを最後まで実行する
+   * @return プログラムが最後まで実行された場合は true，ステップ数の上限で中断した場合は false
+   */
+  public boolean run() throws InterruptedException
+  {
+    // ロボットを初期位置に置く
+    world.init();
+    steps = 0;
+
+    try {
+      robot.run();
+    } catch (RobotStopped e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * １ステップ進める．待ち時間も描画も無く，ステップ数を数えるだけ
+   */
+  public void delay() throws InterruptedException
+  {
+    steps++;
+    // 上限を超えた場合はプログラムを中断する
+    if (maxSteps > 0 && steps > maxSteps)
+      throw new RobotStopped("step limit " + maxSteps);
+  }
+
+  /**
+   * 仮想環境を取得する
+   * @return 仮想環境
+   */
+  public World getWorld()
+  {
+    return world;
+  }
+
+  /**
+   * 画面を持たない環境かどうか判定する
+   * @return 画面を持たないので true を返す
+   */
+  public boolean isHeadless()
+  {
+    return true;
+  }
+
+  /**
+   * 実行したステップ数（delay() の呼び出し回数）を取得する
+   * @return ステップ数
+   */
+  public long getSteps()
+  {
+    return steps;
+  }
+
+  /**
+   * ステップ数の上限を設定する
+   * @param maxSteps ステップ数の上限（0 以下の場合は上限なし）
+   */
+  public void setMaxSteps(long maxSteps)
+  {
+    this.maxSteps = maxSteps;
+  }
+
+  /**
+   * 起動用 main 関数
+   * @param args コマンドライン引数の配列
+   */
+  public static void main(String[] args) throws Exception
+  {
+    // コマンドライン引数のチェック
+    if (args.length < 2) {
+      System.out.println("Usage: java HeadlessSimulator ROBOT_CLASSNAME MAPFILE [MAXSTEPS [SEED]]");
+      System.exit(-1);
+    }
+
+    // 画面を使わない
+    System.setProperty("java.awt.headless", "true");
+
+    // シミュレータの生成
+    long t0 = System.nanoTime();
+    HeadlessSimulator sim = new HeadlessSimulator(args[0], args[1]);
+    if (args.length > 2)
+      sim.setMaxSteps(Long.parseLong(args[2]));
+    if (args.length > 3)
+      sim.getWorld().setSeed(Long.parseLong(args[3]));
+    long t1 = System.nanoTime();
+
+    // 実行
+    boolean finished = sim.run();
+    long t2 = System.nanoTime();
+
+    // 結果の表示
+    World world = sim.getWorld();
+    double run  = (int)(world.getRobotRun()  * 10) / 10.0;
+    double miss = (int)(world.getRobotMiss() * 10) / 10.0;
+    double sec  = (t2 - t1) / 1e9;
+    System.out.println("Result: " + (finished ? "finished" : "step limit reached"));
+    System.out.println(" Run: " + run + "cm");
+    System.out.println(" Miss: " + miss + "cm");
+    System.out.println(" Steps: " + sim.getSteps());
+    System.out.println(" Load: " + (t1 - t0) / 1000000 + "ms");
+    System.out.println(" Time: " + (long)(sec * 1000) + "ms (" + (long)(sim.getSteps() / Math.max(sec, 1e-9)) + " steps/s)");
+  }
+
+  /** ロボットオブジェクトへの参照 */
+  private Robot robot = null;
+  /** 仮想環境 */
+  private World world = null;
+  /** 実行したステップ数 */
+  private long steps = 0;
+  /** ステップ数の上限（0 以下の場合は上限なし） */
+  private long maxSteps = 0;
+}
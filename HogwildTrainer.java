@@ -0,0 +1,182 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 複数の仮想環境で同時に学習し，一つのＱテーブルを共有して更新するクラス．Hogwild と同じく
+ * ロックを使わないが，書き換えは SharedQTable の比較交換（CAS）で行う．
+ * 同じ総ステップ数を同じ SharedQTable で一つの仮想環境だけで学習した場合と実行時間を比較する
+ */
+public class HogwildTrainer
+{
+  /**
+   * 学習用のオブジェクトを生成する
+   * @param lineMap         色判定済みのマップ（全ての仮想環境で共有）
+   * @param actions         行動の集まり
+   * @param stepsPerEpisode １試行あたりのステップ数
+   * @param alpha           学習率
+   * @param gamma           割引率
+   * @param epsilon         Ｑ値が最大の行動を選択する確率
+   */
+  public HogwildTrainer(LineMap lineMap, ActionSet actions, int stepsPerEpisode,
+                        double alpha, double gamma, double epsilon)
+  {
+    this.lineMap         = lineMap;
+    this.actions         = actions;
+    this.stepsPerEpisode = stepsPerEpisode;
+    this.alpha           = alpha;
+    this.gamma           = gamma;
+    this.epsilon         = epsilon;
+  }
+
+  /**
+   * 一つの仮想環境で順に学習する（QLearning.update を使う従来の方法．最大値の求め方が
+   * SharedQTable と違うので，実行時間の比較には使わず，学習結果の参考にする）
+   * @param totalSteps 総ステップ数
+   * @param seed       乱数の種
+   * @return 学習したＱ値
+   */
+  public QLearning trainSequential(long totalSteps, long seed)
+  {
+    QLearning q = new QLearning(LineTraceTask.STATES, actions.size(), alpha, gamma, seed);
+    World world = new World(lineMap);
+    Episode episode = world.getEpisode();
+    for (long done = 0; done < totalSteps; ) {
+      // ロボットを初期位置に戻す（新しい試行が始まる）
+      world.init();
+      for (int s = 0; s < stepsPerEpisode && done < totalSteps && !episode.isDone(); s++, done++) {
+        int state  = LineTraceTask.judgeState(world.readSensors());
+        int action = q.selectAction(state, epsilon, actions.size());
+        actions.apply(world, action);
+        int sensors = world.readSensors();
+        q.update(state, action, LineTraceTask.judgeState(sensors), LineTraceTask.judgeReward(sensors));
+        // ゴールやマップの外に出た場合は試行を終える
+        episode.step();
+      }
+    }
+    return q;
+  }
+
+  /**
+   * 複数の仮想環境で同時に学習し，共有したＱテーブルを更新する（workers が 1 の場合は
+   * 同じ更新方法で順に学習するので，同時に学習した場合の比較の基準になる）
+   * @param workers    同時に学習する仮想環境の数
+   * @param totalSteps 全ての仮想環境を合わせた総ステップ数
+   * @param seed       乱数の種
+   * @return 学習したＱ値
+   */
+  public SharedQTable trainParallel(int workers, final long totalSteps, long seed)
+    throws InterruptedException, ExecutionException
+  {
+    final SharedQTable q = new SharedQTable(LineTraceTask.STATES, actions.size(), alpha, gamma);
+    SplittableRandom seeds = new SplittableRandom(seed);
+
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int w = 0; w < workers; w++) {
+        // 総ステップ数を仮想環境ごとに分ける
+        final long share = totalSteps / workers + ((w < totalSteps % workers) ? 1 : 0);
+        final SplittableRandom rand = seeds.split();
+        futures.add(pool.submit(new Runnable() {
+            public void run() {
+              // 仮想環境ごとにロボットの姿勢を持つ（マップは共有）
+              World world = new World(lineMap);
+              Episode episode = world.getEpisode();
+              for (long done = 0; done < share; ) {
+                world.init();
+                for (int s = 0; s < stepsPerEpisode && done < share && !episode.isDone(); s++, done++) {
+                  int state  = LineTraceTask.judgeState(world.readSensors());
+                  int action = q.selectAction(state, epsilon, actions.size(), rand);
+                  actions.apply(world, action);
+                  int sensors = world.readSensors();
+                  q.update(state, action, LineTraceTask.judgeState(sensors), LineTraceTask.judgeReward(sensors));
+                  episode.step();
+                }
+              }
+            }
+          }));
+      }
+      for (Future<?> future : futures)
+        future.get();
+    } finally {
+      pool.shutdown();
+    }
+    return q;
+  }
+
+  /**
+   * 起動用 main 関数．MyRobot と同じ設定（alpha=gamma=epsilon=0.5，１試行 1000 ステップ）で
+   * 学習し，実行時間と学習後のゴールまでのステップ数を表示する
+   * @param args コマンドライン引数の配列
+   */
+  public static void main(String[] args) throws Exception
+  {
+    // コマンドライン引数のチェック
+    if (args.length < 3) {
+      System.out.println("Usage: java HogwildTrainer MAPFILE WORKERS TOTAL_STEPS [SEED [FORWARD_CM]]");
+      System.exit(-1);
+    }
+
+    // 画面を使わない
+    System.setProperty("java.awt.headless", "true");
+
+    LineMap lineMap    = LineMap.load(args[0]);
+    int     workers    = Integer.parseInt(args[1]);
+    long    totalSteps = Long.parseLong(args[2]);
+    long    seed       = (args.length > 3) ? Long.parseLong(args[3]) : new SplittableRandom().nextLong();
+    double  forward    = (args.length > 4) ? Double.parseDouble(args[4]) : 0.0;
+    HogwildTrainer trainer = new HogwildTrainer(lineMap, ActionSet.ROTATE.withForward(forward), 1000, 0.5, 0.5, 0.5);
+
+    // JIT コンパイルや実行順の影響を除くため，３通りの学習を順に TIMING_ROUNDS 回繰り返し，
+    // それぞれ最も短い時間を使う（同じ種なので学習結果は毎回同じ）
+    long refTime = Long.MAX_VALUE, seqTime = Long.MAX_VALUE, parTime = Long.MAX_VALUE;
+    QLearning reference = null, sequential = null, parallel = null;
+    for (int round = 0; round < TIMING_ROUNDS; round++) {
+      // 参考：QLearning で順に学習
+      long t0 = System.nanoTime();
+      reference = trainer.trainSequential(totalSteps, seed);
+      long t1 = System.nanoTime();
+      // 基準：同じ SharedQTable を一つの仮想環境で順に学習
+      sequential = trainer.trainParallel(1, totalSteps, seed).toQLearning();
+      long t2 = System.nanoTime();
+      // 同時に学習
+      parallel = trainer.trainParallel(workers, totalSteps, seed).toQLearning();
+      long t3 = System.nanoTime();
+      refTime = Math.min(refTime, t1 - t0);
+      seqTime = Math.min(seqTime, t2 - t1);
+      parTime = Math.min(parTime, t3 - t2);
+    }
+
+    // 学習した方策でゴールを目指す
+    World world = new World(lineMap);
+    int refGoal = LineTraceTask.evaluate(world, reference, EVALUATION_STEPS);
+    int seqGoal = LineTraceTask.evaluate(world, sequential, EVALUATION_STEPS);
+    int parGoal = LineTraceTask.evaluate(world, parallel, EVALUATION_STEPS);
+
+    // 速度向上率は同じ SharedQTable どうしで比べる
+    System.out.println("Total steps: " + totalSteps + ", workers: " + workers
+                       + " (cores: " + Runtime.getRuntime().availableProcessors() + ")");
+    System.out.println(" QLearning:       " + refTime / 1000000 + "ms, steps to goal: " + refGoal);
+    System.out.println(" SharedQTable x1: " + seqTime / 1000000 + "ms, steps to goal: " + seqGoal);
+    System.out.println(" SharedQTable x" + workers + ": " + parTime / 1000000 + "ms, steps to goal: " + parGoal);
+    System.out.println(" Speedup: " + (int)((double)seqTime / parTime * 100) / 100.0);
+  }
+
+  /** 実行時間を測る回数（最も短い時間を使う） */
+  private final static int TIMING_ROUNDS = 5;
+  /** 学習後の評価で使うステップ数の上限 */
+  private final static int EVALUATION_STEPS = 10000;
+
+  /** 色判定済みのマップ */
+  private final LineMap lineMap;
+  /** 行動の集まり */
+  private final ActionSet actions;
+  /** １試行あたりのステップ数 */
+  private final int stepsPerEpisode;
+  /** 学習率 */
+  private final double alpha;
+  /** 割引率 */
+  private final double gamma;
+  /** Ｑ値が最大の行動を選択する確率 */
+  private final double epsilon;
+}
@@ -0,0 +1,452 @@
+import java.io.*;
+import java.awt.image.*;
+import javax.imageio.*;
+
+/**
+ * 色判定済みのマップを表すクラス．マップ画像は読み込み時に一度だけ色判定し，
+ * 画素ごとの色番号（Robot.WHITE など）を byte 配列として保持する．あわせて，
+ * 各画素から最も近いライン（黒）の画素までの距離場と，ロボットがライン上か
+ * どうかの境界までの距離（符号付き）も求めておく．生成後は変更されないので，
+ * 複数のスレッドの仮想環境で共有してよい
+ */
+public class LineMap
+{
+  /**
+   * マップ画像ファイルを読み込んで色判定済みのマップを生成する
+   * @param mapName マップ画像のファイル名
+   * @return 色判定済みのマップ
+   */
+  public static LineMap load(String mapName) throws IOException
+  {
+    return new LineMap(ImageIO.read(new File(mapName)), mapName);
+  }
+
+  /**
+   * マップ画像から色判定済みのマップを生成する
+   * @param image   マップ画像データ
+   * @param mapName マップ画像のファイル名（ロボットの開始位置の決定に使う）
+   */
+  public LineMap(BufferedImage image, String mapName)
+  {
+    // マップ画像と名前を保存
+    this.image   = image;
+    this.mapName = mapName;
+
+    // マップに応じて初期位置を設定する（知らないマップの場合はデフォルト位置）
+    int index = -1;
+    String[] f = mapName.split("/"); // ディレクトリを考慮する
+    String filen = f[f.length - 1]; // ファイル名だけを切り出す
+    for (int i=0; i < mapNames.length; i++) {
+      if (filen.equals(mapNames[i]))
+        index = i;
+    }
+    startX   = (index >= 0) ? startXs[index]   : 200;
+    startY   = (index >= 0) ? startYs[index]   : 200;
+    startDir = (index >= 0) ? startDirs[index] : 0.0;
+
+    // 縦・横幅の取得
+    width  = image.getWidth();
+    height = image.getHeight();
+
+    // パディングを含めた縦・横幅
+    stride       = width  + PADDING * 2;
+    paddedHeight = height + PADDING * 2;
+
+    // 色番号の配列（パディング部分は白とする）
+    colors = new byte[stride * paddedHeight];
+    java.util.Arrays.fill(colors, (byte)Robot.WHITE);
+
+    // ARGB を一行ずつまとめて取得し，色判定する
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      int base = (y + PADDING) * stride + PADDING;
+      for (int x = 0; x < width; x++)
+        colors[base + x] = (byte)classify(row[x]);
+    }
+
+    int n = stride * paddedHeight;
+
+    // ラインまでの距離場を計算する
+    boolean[] black = new boolean[n];
+    for (int i = 0; i < n; i++)
+      black[i] = (colors[i] == Robot.BLACK);
+    lineDistance = computeDistance(black);
+
+    // ロボットの中心がこの画素にあるときにライン外となる画素からの距離場を計算する
+    boolean[] offLine = new boolean[n];
+    for (int i = 0; i < n; i++)
+      offLine[i] = (lineDistance[i] > FOOTPRINT_RADIUS);
+    float[] offLineDistance = computeDistance(offLine);
+
+    // ライン上かどうかの境界までの符号付き距離（正：ライン外，０以下：ライン上）．
+    // ライン外では，円の半径だけ膨らませたラインまでの距離はラインまでの距離から半径を引いたものになる
+    clearance = new float[n];
+    for (int i = 0; i < n; i++)
+      clearance[i] = offLine[i] ? (float)(lineDistance[i] - FOOTPRINT_RADIUS) : -offLineDistance[i];
+
+    // 明るさを読むときに使う，黒以外の画素までの距離場を計算する
+    boolean[] white = new boolean[n];
+    for (int i = 0; i < n; i++)
+      white[i] = !black[i];
+    whiteDistance = computeDistance(white);
+  }
+
+  /**
+   * 各画素から最も近い対象画素までのユークリッド距離を計算する
+   * (Felzenszwalb & Huttenlocher の距離変換を縦・横の順に適用する)
+   * @param source 対象画素かどうか（パディングを含む）
+   * @return 距離場（パディングを含む）
+   */
+  private float[] computeDistance(boolean[] source)
+  {
+    int n = stride * paddedHeight;
+    double[] sq = new double[n];
+    for (int i = 0; i < n; i++)
+      sq[i] = source[i] ? 0.0 : INF;
+
+    // 作業用配列
+    int size = Math.max(stride, paddedHeight);
+    double[] f = new double[size];
+    double[] d = new double[size];
+    int[]    v = new int[size];
+    double[] z = new double[size + 1];
+
+    // 縦方向の変換
+    for (int x = 0; x < stride; x++) {
+      for (int y = 0; y < paddedHeight; y++)
+        f[y] = sq[y * stride + x];
+      transform1D(f, paddedHeight, d, v, z);
+      for (int y = 0; y < paddedHeight; y++)
+        sq[y * stride + x] = d[y];
+    }
+
+    // 横方向の変換
+    for (int y = 0; y < paddedHeight; y++) {
+      System.arraycopy(sq, y * stride, f, 0, stride);
+      transform1D(f, stride, d, v, z);
+      System.arraycopy(d, 0, sq, y * stride, stride);
+    }
+
+    // 距離の２乗から距離に直す
+    float[] dist = new float[n];
+    for (int i = 0; i < n; i++)
+      dist[i] = (sq[i] >= INF) ? Float.POSITIVE_INFINITY : (float)Math.sqrt(sq[i]);
+    return dist;
+  }
+
+  /**
+   * １次元の２乗距離変換（放物線の下側包絡線を求める）
+   * @param f 入力（各点のコスト）
+   * @param n 要素数
+   * @param d 出力（２乗距離）
+   * @param v 作業用：包絡線を構成する放物線の位置
+   * @param z 作業用：放物線どうしの境界
+   */
+  private static void transform1D(double[] f, int n, double[] d, int[] v, double[] z)
+  {
+    int k = 0;
+    v[0] = 0;
+    z[0] = -INF;
+    z[1] = +INF;
+    for (int q = 1; q < n; q++) {
+      // 無限大どうしの交点は求められないので，黒が無い点は飛ばしてよい
+      if (f[q] >= INF)
+        continue;
+      if (f[v[0]] >= INF) {
+        v[0] = q;
+        continue;
+      }
+      double s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+      while (s <= z[k]) {
+        k--;
+        s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+      }
+      k++;
+      v[k] = q;
+      z[k] = s;
+      z[k + 1] = +INF;
+    }
+
+    // 黒が一つも無い列
+    if (f[v[0]] >= INF) {
+      for (int q = 0; q < n; q++)
+        d[q] = INF;
+      return;
+    }
+
+    k = 0;
+    for (int q = 0; q < n; q++) {
+      while (z[k + 1] < q)
+        k++;
+      d[q] = (q - v[k]) * (q - v[k]) + f[v[k]];
+    }
+  }
+
+  /**
+   * ARGB 値から色を判定する
+   * @param argb ARGB 値
+   * @return 色
+   */
+  public static int classify(int argb)
+  {
+    // RGB を抽出
+    int r = (argb & 0x00ff0000) >> 16;
+    int g = (argb & 0x0000ff00) >>  8;
+    int b = (argb & 0x000000ff);
+
+    // 誤差修正
+    int rgb = 0;
+    if (r >= 128) rgb |= 0xff0000;
+    if (g >= 128) rgb |= 0x00ff00;
+    if (b >= 128) rgb |= 0x0000ff;
+
+    // 色判定
+    switch (rgb) {
+    case 0x000000: return Robot.BLACK;
+    case 0xffffff: return Robot.WHITE;
+    case 0x00ff00: return Robot.GREEN;
+    }
+
+    return Robot.UNKNOWN_COLOR;
+  }
+
+  /**
+   * 指定座標の色を取得する
+   * @param x Ｘ座標
+   * @param y Ｙ座標
+   * @return 色（範囲外の場合は白）
+   */
+  public int getColor(int x, int y)
+  {
+    int px = x + PADDING;
+    int py = y + PADDING;
+
+    // パディングよりも外側の場合は白とする（いずれかが負になれば範囲外）
+    if ((px | py | (stride - 1 - px) | (paddedHeight - 1 - py)) < 0)
+      return Robot.WHITE;
+
+    return colors[py * stride + px];
+  }
+
+  /**
+   * 指定座標から最も近いライン（黒）の画素までの距離を取得する
+   * @param x Ｘ座標
+   * @param y Ｙ座標
+   * @return ラインまでの距離（画素）．ラインが無い場合は無限大
+   */
+  public float getLineDistance(int x, int y)
+  {
+    int px = x + PADDING;
+    int py = y + PADDING;
+
+    // パディングよりも外側の場合，ラインは画像内にしか無いので画像までの距離を下限として返す
+    if ((px | py | (stride - 1 - px) | (paddedHeight - 1 - py)) < 0) {
+      int dx = Math.max(Math.max(-x, x - (width  - 1)), 0);
+      int dy = Math.max(Math.max(-y, y - (height - 1)), 0);
+      return (float)Math.sqrt((double)dx * dx + (double)dy * dy);
+    }
+
+    return lineDistance[py * stride + px];
+  }
+
+  /**
+   * 指定座標を光センサで読み取ったときの明るさを取得する．光センサは半径 SENSOR_RADIUS の
+   * 範囲の平均を読むものとし，ラインの境界からの符号付き距離に応じて 0.0（黒）から
+   * 1.0（白）まで直線的に変化させる（ゴールの緑など黒以外の色は白と同じ扱い）
+   * @param x Ｘ座標
+   * @param y Ｙ座標
+   * @return 明るさ（0.0〜1.0）
+   */
+  public double getIntensity(int x, int y)
+  {
+    // ライン外ではラインまでの距離，ライン上ではライン外までの距離（負）
+    double distance = getLineDistance(x, y);
+    if (distance == 0.0) {
+      int px = x + PADDING;
+      int py = y + PADDING;
+      distance = -whiteDistance[py * stride + px];
+    }
+
+    double intensity = 0.5 + distance / (2 * SENSOR_RADIUS);
+    return (intensity < 0.0) ? 0.0 : (intensity > 1.0) ? 1.0 : intensity;
+  }
+
+  /**
+   * ロボットの中心が指定座標にあるとき，ライン上か判定する
+   * @param x Ｘ座標
+   * @param y Ｙ座標
+   * @return ロボットがライン上の場合は true を返す
+   */
+  public boolean isOnLine(int x, int y)
+  {
+    return getClearance(x, y) <= 0.0f;
+  }
+
+  /**
+   * ロボットの中心が指定座標にあるとき，ライン上かどうかが変わる位置までの距離を取得する
+   * @param x Ｘ座標
+   * @param y Ｙ座標
+   * @return ライン外の場合は正の距離，ライン上の場合は０以下（絶対値が距離）
+   */
+  public float getClearance(int x, int y)
+  {
+    int px = x + PADDING;
+    int py = y + PADDING;
+
+    // パディングよりも外側の場合は常にライン外
+    if ((px | py | (stride - 1 - px) | (paddedHeight - 1 - py)) < 0)
+      return (float)(getLineDistance(x, y) - FOOTPRINT_RADIUS);
+
+    return clearance[py * stride + px];
+  }
+
+  /**
+   * 直線上を移動したときに，ライン外を走行した長さを求める．
+   * 境界までの距離だけまとめて進むので，ラインから遠い区間やライン上の長い区間は
+   * 数回の参照で済む．境界付近では MIN_STEP 刻みになるので，境界を一回またぐごとに
+   * 最大 MIN_STEP の誤差が生じる
+   * @param x      開始Ｘ座標
+   * @param y      開始Ｙ座標
+   * @param ux     移動方向の単位ベクトル（Ｘ成分）
+   * @param uy     移動方向の単位ベクトル（Ｙ成分）
+   * @param length 移動距離 (px)
+   * @return ライン外を走行した長さ (px)
+   */
+  public double offLineLength(double x, double y, double ux, double uy, double length)
+  {
+    double off = 0.0;
+    double t = 0.0;
+    while (t < length) {
+      float c = getClearance((int)(x + ux * t), (int)(y + uy * t));
+
+      // 画素の量子化の分だけ控えめに進む
+      double step = Math.max(Math.abs(c) - CLEARANCE_SLACK, MIN_STEP);
+      if (t + step > length)
+        step = length - t;
+
+      if (c > 0.0f)
+        off += step;
+      t += step;
+    }
+    return off;
+  }
+
+  /**
+   * マップ画像データを取得する
+   * @return マップ画像データ
+   */
+  public BufferedImage getImage()
+  {
+    return image;
+  }
+
+  /**
+   * マップ画像のファイル名を取得する
+   * @return マップ画像のファイル名
+   */
+  public String getMapName()
+  {
+    return mapName;
+  }
+
+  /**
+   * ロボットの開始Ｘ座標を取得する
+   * @return 開始Ｘ座標
+   */
+  public double getStartX()
+  {
+    return startX;
+  }
+
+  /**
+   * ロボットの開始Ｙ座標を取得する
+   * @return 開始Ｙ座標
+   */
+  public double getStartY()
+  {
+    return startY;
+  }
+
+  /**
+   * ロボットの開始時の向きを取得する
+   * @return 開始時の向き（度）
+   */
+  public double getStartDir()
+  {
+    return startDir;
+  }
+
+  /**
+   * マップの横幅を取得する
+   * @return マップの横幅
+   */
+  public int getWidth()
+  {
+    return width;
+  }
+
+  /**
+   * マップの高さを取得する
+   * @return マップの高さ
+   */
+  public int getHeight()
+  {
+    return height;
+  }
+
+  /** マップの周囲に付け加える余白の幅（ロボットの大きさの半分以上） */
+  public final static int PADDING = 32;
+
+  /** ライン上の判定に使うロボットの半径 (px)．ロボットの大きさ（60x60）に内接する円とする */
+  public final static double FOOTPRINT_RADIUS = 30.0;
+
+  /** 光センサが明るさを読む範囲の半径 (px) */
+  public final static double SENSOR_RADIUS = 4.0;
+
+  /** 境界付近で進む最小の距離 (px) */
+  public final static double MIN_STEP = 0.5;
+  /** 座標を画素に丸めることによる距離の誤差の上限 (px) */
+  private final static double CLEARANCE_SLACK = 1.5;
+
+  /** 距離変換で「黒が無い」ことを表す値 */
+  private final static double INF = 1e20;
+
+  /** マップの名前配列 */
+  private final static String[] mapNames = { "map1-rect.png", "map2-circ.png", "map3-grid.png", "map4-grid.png",
+                                             "map5-motegi.png", "map6-monte.png", "map7-fuji.png", "map8-suzuka.png" };
+  /** マップごとのロボットの開始Ｘ座標 */
+  private final static double[] startXs = { 330, 450,  88, 135, 410, 94, 410, 580 };
+  /** マップごとのロボットの開始Ｙ座標 */
+  private final static double[] startYs = { 130, 138, 450, 480, 435, 320, 205, 117 };
+  /** マップごとのロボットの開始時の向き */
+  private final static double[] startDirs = { 90, 110, 0, 90, 95, 10, 90, 90 };
+
+  /** マップの画像データ（画像を直接参照する場合のみ使う） */
+  private final BufferedImage image;
+  /** マップファイルの名前 */
+  private final String mapName;
+  /** ロボットの開始Ｘ座標 */
+  private final double startX;
+  /** ロボットの開始Ｙ座標 */
+  private final double startY;
+  /** ロボットの開始時の向き */
+  private final double startDir;
+
+  /** 画素ごとの色番号（パディングを含む） */
+  private final byte[] colors;
+  /** 画素ごとの最も近いラインまでの距離（パディングを含む） */
+  private final float[] lineDistance;
+  /** 画素ごとのライン上かどうかの境界までの符号付き距離（パディングを含む） */
+  private final float[] clearance;
+  /** 画素ごとの黒以外の画素までの距離（パディングを含む） */
+  private final float[] whiteDistance;
+  /** マップの横幅 */
+  private final int width;
+  /** マップの高さ */
+  private final int height;
+  /** パディングを含めた横幅 */
+  private final int stride;
+  /** パディングを含めた高さ */
+  private final int paddedHeight;
+}
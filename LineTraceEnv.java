@@ -0,0 +1,153 @@
+import java.util.SplittableRandom;
+
+/**
+ * ライントレースの学習環境（reset で試行を始め，step で行動を１つ実行する）．
+ * 学習のループで init()・ActionSet.apply・judgeState・judgeReward を組み合わせる代わりに使うと，
+ * どの学習方法でも同じ手順で仮想環境を動かせる．観測は LineTraceTask.judgeState の状態番号，
+ * 報酬は LineTraceTask.judgeReward，終了の判定は仮想環境の Episode による
+ */
+public class LineTraceEnv
+{
+  /**
+   * 学習環境を生成する
+   * @param world   仮想環境
+   * @param actions 行動の集まり
+   */
+  public LineTraceEnv(World world, ActionSet actions)
+  {
+    this.world   = world;
+    this.actions = actions;
+  }
+
+  /**
+   * 開始位置に戻して新しい試行を始める．開始時の向きのばらつきを指定している場合は，
+   * 直前の reset(seed) から続く乱数で向きを決める
+   * @return 最初の観測（状態番号）
+   */
+  public int reset()
+  {
+    world.init();
+    if (startJitter > 0.0) {
+      // 種を指定していない場合は仮想環境の種から導く
+      if (jitterRand == null)
+        jitterRand = new SplittableRandom(world.getSeed()).split();
+      world.setRobotDir(world.getRobotDir() + (jitterRand.nextDouble() * 2.0 - 1.0) * startJitter);
+    }
+    return observe();
+  }
+
+  /**
+   * 乱数の種を指定して新しい試行を始める．開始時の向きのばらつきを決める乱数は，仮想環境の
+   * 乱数と重ならないようにこの種から分けて作り直す（同じ種であれば同じ開始位置になり，
+   * 続けて reset() を呼んだ場合の開始位置の並びも同じになる）
+   * @param seed 乱数の種
+   * @return 最初の観測（状態番号）
+   */
+  public int reset(long seed)
+  {
+    world.setSeed(seed);
+    jitterRand = new SplittableRandom(seed).split();
+    return reset();
+  }
+
+  /**
+   * reset() で開始時の向きをずらす範囲を設定する
+   * @param degrees 最大でずらす角度（度．0 の場合はずらさない）
+   */
+  public void setStartJitter(double degrees)
+  {
+    startJitter = degrees;
+  }
+
+  /**
+   * 行動を１つ実行する．戻り値のオブジェクトは使い回すので，次の step() までに値を取り出す
+   * @param action 行動番号
+   * @return 実行結果（観測・報酬・終了したかどうか）
+   */
+  public Step step(int action)
+  {
+    actions.apply(world, action);
+
+    // 光センサは一度だけ読む
+    int sensors = world.readSensors();
+    result.sensors     = sensors;
+    result.observation = LineTraceTask.judgeState(sensors);
+    result.reward      = LineTraceTask.judgeReward(sensors);
+    result.reason      = world.getEpisode().step();
+    result.done        = (result.reason != Episode.RUNNING);
+    return result;
+  }
+
+  /**
+   * 今の観測を取得する
+   * @return 状態番号
+   */
+  public int observe()
+  {
+    return LineTraceTask.judgeState(world.readSensors());
+  }
+
+  /**
+   * 観測の数（状態数）を取得する
+   * @return 状態数
+   */
+  public int getObservationCount()
+  {
+    return LineTraceTask.STATES;
+  }
+
+  /**
+   * 行動の集まりを取得する
+   * @return 行動の集まり
+   */
+  public ActionSet getActions()
+  {
+    return actions;
+  }
+
+  /**
+   * 試行の終了条件を取得する（見失ったまま続くステップ数などを設定する）
+   * @return 試行の終了条件
+   */
+  public Episode getEpisode()
+  {
+    return world.getEpisode();
+  }
+
+  /**
+   * 仮想環境を取得する
+   * @return 仮想環境
+   */
+  public World getWorld()
+  {
+    return world;
+  }
+
+  /**
+   * 行動を１つ実行した結果を表すクラス
+   */
+  public static class Step
+  {
+    /** 実行後の観測（状態番号） */
+    public int observation;
+    /** 実行後の光センサの値（Robot.sensorColor で取り出す） */
+    public int sensors;
+    /** 報酬 */
+    public double reward;
+    /** 試行が終了したかどうか */
+    public boolean done;
+    /** 試行が終了した理由（Episode.RUNNING など） */
+    public int reason;
+  }
+
+  /** 仮想環境 */
+  private final World world;
+  /** 行動の集まり */
+  private final ActionSet actions;
+  /** 開始時の向きをずらす範囲（度） */
+  private double startJitter = 0.0;
+  /** 開始時の向きを決める乱数（reset(seed) で種から分けて作る） */
+  private SplittableRandom jitterRand = null;
+  /** 実行結果（使い回す） */
+  private final Step result = new Step();
+}
@@ -0,0 +1,107 @@
+/**
+ * ライントレースの強化学習課題を表すクラス．状態・報酬の定義は MyRobot と同じで，
+ * Robot のプログラムを介さずに仮想環境を直接動かして学習するために使う（行動は ActionSet）
+ */
+public class LineTraceTask
+{
+  /**
+   * 光センサの値の組み合わせを一意の状態に対応付ける
+   * @param sensors 光センサの値（Robot.readSensors() の戻り値）
+   * @return 状態番号（0〜STATES-1）
+   */
+  public static int judgeState(int sensors)
+  {
+    int sum = 0;
+    if (Robot.sensorColor(sensors, Robot.LIGHT_C) == Robot.BLACK)
+      sum += 4;
+    if (Robot.sensorColor(sensors, Robot.LIGHT_B) == Robot.BLACK)
+      sum += 2;
+    if (Robot.sensorColor(sensors, Robot.LIGHT_A) == Robot.BLACK)
+      sum += 1;
+    return sum;
+  }
+
+  /**
+   * センサの履歴・直前の行動・向きを組み合わせた状態の番号を求める（HashedQTable 用）．
+   * 下位から順に，今のセンサの値（24 ビット），直前のセンサの値（24 ビット），
+   * 直前の行動（8 ビット），向きを HEADINGS 等分した番号（8 ビット）を詰める
+   * @param sensors     光センサの値（Robot.readSensors() の戻り値）
+   * @param prevSensors 直前の光センサの値
+   * @param lastAction  直前の行動番号
+   * @param dir         ロボットの向き（度）
+   * @return 状態の番号
+   */
+  public static long judgeStateCode(int sensors, int prevSensors, int lastAction, double dir)
+  {
+    // 向きを 0〜360 度に直してから等分する
+    double d = dir % 360.0;
+    if (d < 0.0)
+      d += 360.0;
+    int heading = (int)(d * HEADINGS / 360.0) % HEADINGS;
+
+    return (sensors & 0xffffffL)
+      | (prevSensors & 0xffffffL) << 24
+      | (long)(lastAction & 0xff) << 48
+      | (long)heading << 56;
+  }
+
+  /**
+   * 報酬を求める
+   * @param sensors 光センサの値（Robot.readSensors() の戻り値）
+   * @return 報酬
+   */
+  public static int judgeReward(int sensors)
+  {
+    int a = Robot.sensorColor(sensors, Robot.LIGHT_A);
+    int b = Robot.sensorColor(sensors, Robot.LIGHT_B);
+    int c = Robot.sensorColor(sensors, Robot.LIGHT_C);
+
+    // ゴールに到達すれば大きな報酬
+    if (a == Robot.GREEN || b == Robot.GREEN || c == Robot.GREEN)
+      return 1000;
+    // ラインを見失えば大きな罰
+    if (a == Robot.WHITE && b == Robot.WHITE && c == Robot.WHITE)
+      return -100;
+    // 中央のセンサがライン外
+    if (a + b + c <= 2 && b == Robot.WHITE)
+      return 1;
+    return 10;
+  }
+
+  /**
+   * ゴール上か判定する
+   * @param sensors 光センサの値（Robot.readSensors() の戻り値）
+   * @return ゴール上の場合は true を返す
+   */
+  public static boolean isOnGoal(int sensors)
+  {
+    return Robot.sensorColor(sensors, Robot.LIGHT_A) == Robot.GREEN
+        || Robot.sensorColor(sensors, Robot.LIGHT_B) == Robot.GREEN
+        || Robot.sensorColor(sensors, Robot.LIGHT_C) == Robot.GREEN;
+  }
+
+  /**
+   * 学習した方策で開始位置からゴールを目指す（MyRobot の実行部分と同じく ActionSet.ROTATE_FORWARD）
+   * @param world    仮想環境
+   * @param q        学習したＱ値
+   * @param maxSteps ステップ数の上限
+   * @return ゴールまでのステップ数．上限までにゴールできなかった場合は -1
+   */
+  public static int evaluate(World world, QLearning q, int maxSteps)
+  {
+    world.init();
+    for (int s = 1; s <= maxSteps; s++) {
+      ActionSet.ROTATE_FORWARD.apply(world, q.selectAction(judgeState(world.readSensors())));
+      if (isOnGoal(world.readSensors()))
+        return s;
+    }
+    return -1;
+  }
+
+  /** 状態数 */
+  public final static int STATES = 8;
+  /** 報酬の定義の版（judgeReward() を変えたら増やす．保存した Q テーブルを読み込まないようにする） */
+  public final static int REWARD_VERSION = 1;
+  /** judgeStateCode() で向きを分ける数 */
+  public final static int HEADINGS = 8;
+}
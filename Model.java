@@ -1,15 +1,16 @@
 import java.io.*;
 import java.awt.*;
-import java.awt.geom.*;
 import java.awt.image.*;
 import javax.imageio.*;
 import javax.swing.*;
 import javax.swing.event.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * ライントレーサーのモデルを表すクラス
  */
-public class Model extends Thread implements ChangeListener
+public class Model extends Thread implements ChangeListener, SimulationEngine
 {
   /**
    * ライントレーサーのモデルオブジェクトを生成する
@@ -20,19 +21,16 @@ public class Model extends Thread implements ChangeListener
   {
     try {
 
+      // マップ画像を読み込み，色判定済みのマップに変換
+      LineMap lineMap = LineMap.load(mapName);
+      // 仮想環境の生成
+      world = new World(lineMap);
+
       // ロボットオブジェクトを保存
       this.robot = robot;
       // ロボットにモデルを登録
       robot.setModel(this);
 
-      // マップ名を保存
-      this.mapName = mapName;
-      // マップ画像データの読み込み
-      mapImage = ImageIO.read(new File(mapName));
-      // 縦・横幅の取得
-      mapHeight = mapImage.getHeight();
-      mapWidth  = mapImage.getWidth();
-
       // ロボット画像データの読み込み
       robotImage = ImageIO.read(new File("robot.png"));
       // 縦・横幅の取得
@@ -53,102 +51,131 @@ public class Model extends Thread implements ChangeListener
    */
   public void init()
   {
-    // ロボットの初期デフォルト位置
-    robotX   = 200;
-    robotY   = 200;
-    robotDir = 0.0;
-
-    // マップに応じて初期位置を設定する
-    for (int i=0; i < mapNames.length; i++) {
-	String[] f = mapName.split("/"); // ディレクトリを考慮する
-	String filen = f[f.length - 1]; // ファイル名だけを切り出す
-      if (filen.equals(mapNames[i])) {
-        robotX   = startX[i];
-        robotY   = startY[i];
-        robotDir = startDir[i];
-      }
-    }
-    
-    // ロボットの移動距離のリセット
-    robotRun = robotMiss = 0.0;
+    world.init();
   }
 
   /**
-   * 実行用関数
+   * 実行用関数．要求の待ち行列から要求を取り出して状態を遷移させる．
+   * ロボットのプログラムの実行中は，delay() の中で要求を処理する
    */
-  public synchronized void run()
+  public void run()
   {
     while (true) {
 
-      switch (request) {
+      // 要求が来るまで待機する（モニタは保持しない）
+      int rq;
+      try {
+        rq = requests.take();
+      } catch (InterruptedException e) {
+        continue;
+      }
+
+      switch (rq) {
       case RQ_PLAY:
-        // もし停止状態からの繊維であれば，前処理を実行する
-        if (status == ST_STOP)
+        // もし停止状態からの遷移であれば，前処理を実行する
+        if (status.get() == ST_STOP)
           init();
         
         // 実行状態に遷移
-        status = ST_RUNNING;
-        // 要求を完遂
-        request = RQ_NONE;
+        status.set(ST_RUNNING);
 
         // メイン処理を行う
         try {
           robot.run();
+        } catch (RobotStopped e) {
+          // 停止要求によって中断された（状態は遷移済み）
         } catch (InterruptedException e) {
           // 何もしない
         }
 
-        // request == RQ_NONE: robot.run() が無事終了したことを表す
-        if (request == RQ_NONE) {
-          // 停止する
-          status = ST_STOP;
+        // 停止要求以外で robot.run() が終了した場合
+        if (status.getAndSet(ST_STOP) != ST_STOP) {
           // 停止ボタンを有効にする
-          toolbar.selectStopButton();
+          SwingUtilities.invokeLater(new Runnable() {
+              public void run() { toolbar.selectStopButton(); }
+            });
         }
         break;
         
-      case RQ_PAUSE:
-        // 一時停止状態に遷移
-        status = ST_SUSPENDED;
-        // 要求を完遂
-        request = RQ_NONE;
-        break;
-        
       case RQ_STOP:
         // 停止状態に遷移
-        status = ST_STOP;
-        // 要求を完遂
-        request = RQ_NONE;
+        status.set(ST_STOP);
         break;
 
       case RQ_MOVE:
-        // ロボット移動状態に遷移
-        status = ST_MOVING;
-        // 要求を完遂
-        request = RQ_NONE;
+        // 現在の実行状態をバックアップし，ロボット移動状態に遷移
+        statusBackup = status.getAndSet(ST_MOVING);
+        break;
+
+      case RQ_PUT:
+        // 停止中に動かした場合は移動状態のままにする（開始時に init() を実行されることを防ぐため）
+        status.set((statusBackup == ST_STOP) ? ST_MOVING : statusBackup);
+        break;
+
+      default:
+        // 実行していないときの一時停止要求は無視する
         break;
-      }
-      
-      // 要求に変更があるまで待機する
-      try {
-        while (request == RQ_NONE)
-          wait();
-      } catch (InterruptedException e) {
-        // 何もしない
       }
     }
   }
 
   /**
-   * 速度調整＆描画更新
+   * 速度調整＆描画更新（ロボットの１ステップごとに呼ばれる）．一定時間待つ間に届いた
+   * 要求はすぐに処理し，一時停止中・ロボット移動中は再開の要求が来るまでここで待つ
    */
-  protected synchronized void delay() throws InterruptedException
+  public void delay() throws InterruptedException
   {
-    // 描画更新
-    if (showView)
+    // 時計を進め，描画するステップであれば描画更新
+    boolean frame = clock.tick();
+    if (frame && showView)
       view.repaint();
-    // 一定時間眠る
-    sleep(delay);
+
+    // 必要なら一定時間待つ．要求が届けばすぐに起きる
+    long wait = clock.getWaitMillis(frame);
+    Integer rq = (wait > 0) ? requests.poll(wait, TimeUnit.MILLISECONDS) : requests.poll();
+    while (rq != null) {
+      handleRequest(rq);
+
+      // 実行状態であれば次の要求は待たない
+      if (status.get() == ST_RUNNING)
+        rq = requests.poll();
+      else
+        rq = requests.take();
+    }
+  }
+
+  /**
+   * ロボットのプログラムの実行中に届いた要求を処理する
+   * @param rq 要求
+   */
+  private void handleRequest(int rq)
+  {
+    switch (rq) {
+    case RQ_PLAY:
+      // 実行状態に遷移（一時停止中であれば再開する）
+      status.set(ST_RUNNING);
+      break;
+
+    case RQ_PAUSE:
+      // 一時停止状態に遷移
+      status.set(ST_SUSPENDED);
+      break;
+
+    case RQ_STOP:
+      // 停止状態に遷移し，ロボットのプログラムを中断する
+      status.set(ST_STOP);
+      throw new RobotStopped("stop requested");
+
+    case RQ_MOVE:
+      // 現在の実行状態をバックアップし，ロボット移動状態に遷移
+      statusBackup = status.getAndSet(ST_MOVING);
+      break;
+
+    case RQ_PUT:
+      // 元の状態に復帰させる
+      status.set(statusBackup);
+      break;
+    }
   }
 
   /**
@@ -158,9 +185,7 @@ public class Model extends Thread implements ChangeListener
   public boolean requestPlay()
   {
     // 実行開始を要求する
-    request = RQ_PLAY;
-    // 待機状態にあるかもしれないので起こす
-    interrupt();
+    requests.offer(RQ_PLAY);
     return true;
   }
 
@@ -170,11 +195,9 @@ public class Model extends Thread implements ChangeListener
    */
   public boolean requestPause()
   {
-    if (status == ST_RUNNING) {
+    if (status.get() == ST_RUNNING) {
       // 一時停止を要求する
-      request = RQ_PAUSE;
-      // 待機状態にあるかもしれないので起こす
-      interrupt();
+      requests.offer(RQ_PAUSE);
       return true;
     }
     return false;
@@ -186,11 +209,10 @@ public class Model extends Thread implements ChangeListener
    */
   public boolean requestStop()
   {
-    if (status == ST_RUNNING || status == ST_SUSPENDED) {
+    int st = status.get();
+    if (st == ST_RUNNING || st == ST_SUSPENDED) {
       // 停止を要求する
-      request = RQ_STOP;
-      // 待機状態にあるかもしれないので起こす
-      interrupt();
+      requests.offer(RQ_STOP);
       return true;
     }
     return false;
@@ -203,7 +225,16 @@ public class Model extends Thread implements ChangeListener
   public void stateChanged(ChangeEvent e) 
   {
     JSlider slider = (JSlider)e.getSource();
-    delay = (long)(slider.getMaximum() * 10 - Math.log(slider.getValue() * 10)/Math.log(10) * 333);
+    clock.setDelay((long)(slider.getMaximum() * 10 - Math.log(slider.getValue() * 10)/Math.log(10) * 333));
+  }
+
+  /**
+   * 描画１回あたりのステップ数を設定する
+   * @param n ステップ数．SimulationClock.UNTHROTTLED の場合は待たずに実行する
+   */
+  public void setStepsPerFrame(int n)
+  {
+    clock.setStepsPerFrame(n);
   }
 
   /**
@@ -211,12 +242,8 @@ public class Model extends Thread implements ChangeListener
    */
   public void pickUpRobot()
   {
-    // ロボットを移動中にする
-    request = RQ_MOVE;
-    // 現在の実行状態をバックアップする
-    statusBackup = status;
-    // 待機状態にあるかもしれないので起こす
-    interrupt();
+    // ロボットを移動中にする（実行状態のバックアップは要求を処理する側で行う）
+    requests.offer(RQ_MOVE);
   }
   
   /**
@@ -225,13 +252,12 @@ public class Model extends Thread implements ChangeListener
    */
   public void setRobotDir(double angle)
   {
-    robotDir = angle;
+    world.setRobotDir(angle);
     // 描画更新
     if (showView)
       view.repaint();
     // 状態を移動中にする（開始時に init() を実行されることを防ぐため）
-    if (status == ST_STOP)
-      status = ST_MOVING;
+    status.compareAndSet(ST_STOP, ST_MOVING);
   }
   
   /**
@@ -242,8 +268,7 @@ public class Model extends Thread implements ChangeListener
   public void moveRobot(int x, int y)
   {
     // ロボットを移動
-    robotX = x;
-    robotY = y;
+    world.moveRobot(x, y);
     // 描画更新
     if (showView)
       view.repaint();
@@ -258,12 +283,8 @@ public class Model extends Thread implements ChangeListener
   {
     // ロボットを移動
     moveRobot(x, y);
-    // 元の状態に応じて復帰させる
-    switch (statusBackup) {
-    case ST_RUNNING:   requestPlay();  break;
-    case ST_SUSPENDED: requestPause(); break;
-    case ST_STOP:      requestStop();  break;      
-    }
+    // 元の状態に復帰させる
+    requests.offer(RQ_PUT);
   }
   
   /**
@@ -302,7 +323,7 @@ public class Model extends Thread implements ChangeListener
    */
   public Image getMapImage()
   {
-    return mapImage;
+    return world.getLineMap().getImage();
   }
 
   /**
@@ -329,7 +350,7 @@ public class Model extends Thread implements ChangeListener
    */
   public double getRobotX()
   {
-    return robotX;
+    return world.getRobotX();
   }
   
   /**
@@ -338,7 +359,7 @@ public class Model extends Thread implements ChangeListener
    */
   public double getRobotY()
   {
-    return robotY;
+    return world.getRobotY();
   }
   
   /**
@@ -347,7 +368,7 @@ public class Model extends Thread implements ChangeListener
    */
   public double getRobotDir()
   {
-    return robotDir;
+    return world.getRobotDir();
   }
 
   /**
@@ -356,7 +377,7 @@ public class Model extends Thread implements ChangeListener
    */
   public double getRobotRun()
   {
-    return robotRun;
+    return world.getRobotRun();
   }
   
   /**
@@ -365,231 +386,54 @@ public class Model extends Thread implements ChangeListener
    */
   public double getRobotMiss()
   {
-    return robotMiss;
+    return world.getRobotMiss();
   }
   
   /**
-   * ロボットを指定距離前進させる
-   * @param cm 指定距離(cm)
+   * ロボットがライン上か判定する
+   * @return ロボットがライン上の場合は true を返す
    */
-  public void forwardRobot(double cm)
+  public boolean isOnLine()
   {
-    // 向きをラジアンに直す
-    double rad = Math.toRadians(robotDir);
-
-    // 仮想環境上での移動距離
-    double px = cm / cmPerPixel;
-    
-    // X 軸方向の移動量決定
-    double x = Math.sin(rad) * px;
-    // Y 軸方向の移動量決定
-    double y = Math.cos(rad) * px;
-
-    // 1cm 刻みで移動させてライン上かどうかチェックする
-    double unit = (cm > 0.0) ? +1.0 : -1.0;
-    double curr = 0.0;
-
-    // 実際には，誤差を減らすためいっきに移動させるので元座標を保存
-    double orgX = robotX;  
-    double orgY = robotY;
-
-    while (true) {
-      // 単位距離移動する．もし指定距離を以上ならば指定距離ちょうどにする
-      if (Math.abs(curr + unit) < Math.abs(cm)) {
-        curr += unit;
-      }
-      else {
-        unit = cm - curr;
-        curr = cm;
-      }
-      robotX += Math.sin(rad) * (unit / cmPerPixel);
-      robotY -= Math.cos(rad) * (unit / cmPerPixel);
-
-      if (!isOnLine())
-        robotMiss += unit;
-
-      if (curr == cm)
-        break;
-    }
-    
-    // 移動する
-    robotX = orgX + x;
-    robotY = orgY - y;
-
-    // 移動距離を記録
-    robotRun += cm;
+    return world.isOnLine();
   }
   
   /**
-   * ロボットを回転させる
-   * @param angle 回転角度(度)．時計回転の場合は正の値を，半時計回転の場合は負の値を指定す
-   * る
+   * 仮想環境を取得する
+   * @return 仮想環境
    */
-  public void rotateRobot(double angle)
+  public World getWorld()
   {
-    // 回転する
-    robotDir += angle;
-
-    // 移動距離を記録（ロボットの回転半径は 5.5cm）
-    double circum = (2 * Math.PI * 5.5) * (Math.abs(angle) / 360);
-    robotRun += circum;
-
-    // ライン上でなければ，ミスとして記録
-    if (!isOnLine())
-      robotMiss += circum;
+    return world;
   }
-  
-  /**
-   * ロボットの光センサを使って色を読み取る
-   * @param 光センサ番号
-   * @return 色
-   */
-  public int getColor(int lightNo)
-  {
-    // ロボットの中心を基点に回転するアフィン変換の生成
-    AffineTransform xform = new AffineTransform();
-    xform.translate(robotX, robotY);
-    xform.rotate(Math.toRadians(robotDir));
-
-    // 各センサの位置
-    Point2D pos = null;
-    switch (lightNo) {
-    case Robot.LIGHT_A: pos = new Point2D.Double(+10, -20); break;
-    case Robot.LIGHT_B: pos = new Point2D.Double(  0, -20); break;
-    case Robot.LIGHT_C: pos = new Point2D.Double(-10, -20); break;
-    }
 
-    // 各センサ位置の算出
-    xform.transform(pos, pos);
-    int x = (int)pos.getX();
-    int y = (int)pos.getY();
-    
-    // 指定位置の色を取得
-    return getColor(x, y);
-  }
-  
-  /**
-   * 指定座標の色を取得する
-   * @param x Ｘ座標
-   * @param y Ｙ座標
-   * @return 色
-   */
-  private int getColor(int x, int y)
-  {
-    // 範囲外の場合は白とする
-    if (x < 0 || x >= mapWidth ||
-        y < 0 || y >= mapHeight)
-      return Robot.WHITE;
-
-    // ARGB を取得
-    int argb = mapImage.getRGB(x, y);
-    // RGB を抽出
-    int r = (argb & 0x00ff0000) >> 16;
-    int g = (argb & 0x0000ff00) >>  8;
-    int b = (argb & 0x000000ff);
-
-    // 誤差修正
-    int rgb = 0;
-    if (r >= 128) rgb |= 0xff0000;
-    if (g >= 128) rgb |= 0x00ff00;
-    if (b >= 128) rgb |= 0x0000ff;
-
-    // 色判定
-    switch (rgb) {
-    case 0x000000: return Robot.BLACK;
-    case 0xffffff: return Robot.WHITE;
-    case 0x00ff00: return Robot.GREEN;
-    }
-      
-    return Robot.UNKNOWN_COLOR;
-  }
-  
   /**
-   * ロボットがライン上か判定する
-   * @return ロボットがライン上の場合は true を返す
+   * 画面を持たない環境かどうか判定する
+   * @return 画面を持つので false を返す
    */
-  public boolean isOnLine()
+  public boolean isHeadless()
   {
-    // ロボットの大きさは 60x60 （画像は 70x70 だが周りは余白）．中心を原点として，
-    // (1) (-30,0) 〜 (+30,0) まで５ドット刻み
-    // のいずれかがライン上であれば OK とする
-    for (int dx=-30; dx != +30; dx+=5) {
-
-      // 本来はロボットの向きに合わせて座標を回転させる必要があるが，
-      // 境界の判定なのでよしとする
-      int x = (int)(robotX + dx);
-      int y = (int)(robotY +  0);
-      
-      // 色が黒ならライン上
-      if (getColor(x, y) == Robot.BLACK)
-        return true;
-    }
-
-    // ロボットの大きさは 60x60 （画像は 70x70 だが周りは余白）．中心を原点として，
-    // (2) (0,+30) 〜 (0,-30) まで５ドット刻み
-    // のいずれかがライン上であれば OK とする
-    for (int dy=-30; dy != +30; dy+=5) {
-
-      // 本来はロボットの向きに合わせて座標を回転させる必要があるが，
-      // 境界の判定なのでよしとする
-      int x = (int)(robotX +  0);
-      int y = (int)(robotY + dy);
-      
-      // 色が黒ならライン上
-      if (getColor(x, y) == Robot.BLACK)
-        return true;
-    }
-
-    return false;    
+    return false;
   }
   
   /** ロボットオブジェクトへの参照 */
   private Robot robot = null;
 
-  /** マップファイルの名前 */
-  private String mapName = null;
-  /** マップの画像データ */
-  private BufferedImage mapImage = null;
-  /** マップの高さ */
-  private int mapHeight = 0;
-  /** マップの横幅 */
-  private int mapWidth = 0;
-
-  /** マップの名前配列 */
-  private String[] mapNames = { "map1-rect.png", "map2-circ.png", "map3-grid.png", "map4-grid.png",
-                                "map5-motegi.png", "map6-monte.png", "map7-fuji.png", "map8-suzuka.png" };
-  /** マップごとのロボットの開始Ｘ座標 */
-  private double[] startX = { 330, 450,  88, 135, 410, 94, 410, 580 };
-  /** マップごとのロボットの開始Ｙ座標 */
-  private double[] startY = { 130, 138, 450, 480, 435, 320, 205, 117 };
-  /** マップごとのロボットの開始時の向き */
-  private double[] startDir = { 90, 110, 0, 90, 95, 10, 90, 90 };
-    
+  /** 仮想環境 */
+  private World world = null;
+
   /** ロボットの画像データ */
   private BufferedImage robotImage = null;
   /** ロボットの高さ */
   private int robotHeight = 0;
   /** ロボットの横幅 */
   private int robotWidth = 0;
-  /** ロボットの X 座標 */
-  private double robotX = 0.0;
-  /** ロボットの Y 座標 */
-  private double robotY = 0.0;
-  /** ロボットの向き（１２時方向が 0 度） */
-  private double robotDir = 0.0;
-  /** ロボットの走行距離 */
-  private double robotRun = 0.0;
-  /** ロボットのミスをした走行距離 */
-  private double robotMiss = 0.0;
-  
+
   /** 描画用オブジェクト */
   private View view = null;
   /** 画面を描画するかどうか */
-  private boolean showView = true;
+  private volatile boolean showView = true;
 
-  /** 実環境から仮想環境での単位変換 (cm/px) */
-  private final static double cmPerPixel = 0.225;
-  
   /** 制御用ツールバーオブジェクト */
   private ControlToolBar toolbar = null;
 
@@ -601,24 +445,24 @@ public class Model extends Thread implements ChangeListener
   private final static int ST_STOP = 3;
   /** 実行状態：ロボット移動中 */
   private final static int ST_MOVING = 4;
-  /** 実行状態 */
-  private int status = ST_STOP;
-  /** 実行状態のバックアップ */
+  /** 実行状態（ツールバーのスレッドからも参照される） */
+  private final AtomicInteger status = new AtomicInteger(ST_STOP);
+  /** 実行状態のバックアップ（要求を処理するスレッドのみが参照する） */
   private int statusBackup = ST_STOP;
   
-  /** 要求状態：なし */
-  private final static int RQ_NONE = 0;
-  /** 要求状態：実行せよ */
+  /** 要求：実行せよ */
   private final static int RQ_PLAY = 1;
-  /** 要求状態：一時停止せよ */
+  /** 要求：一時停止せよ */
   private final static int RQ_PAUSE = 2;
-  /** 要求状態：停止せよ */
+  /** 要求：停止せよ */
   private final static int RQ_STOP = 3;
-  /** 要求状態：ロボットを移動させよ */
+  /** 要求：ロボットを移動させよ（拾い上げ） */
   private final static int RQ_MOVE = 4;
-  /** 要求状態 */
-  private int request = RQ_NONE;
+  /** 要求：ロボットをおろして元の状態に戻れ */
+  private final static int RQ_PUT = 5;
+  /** 要求の待ち行列 */
+  private final BlockingQueue<Integer> requests = new LinkedBlockingQueue<Integer>();
   
-  /** 遅延時間 (msec) */
-  private long delay = 100;
+  /** 速度調整用の時計 */
+  private final SimulationClock clock = new SimulationClock();
 }
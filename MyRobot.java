@@ -1,3 +1,6 @@
+import java.io.File;
+import java.io.IOException;
+
 /**
  * ロボットクラスの作成例：単純なライントレーサーロボット
  */
@@ -6,64 +9,115 @@ public class MyRobot extends Robot {
 	 * 実行用関数
 	 */
 	private int statesNumber = 8;
-	private int actionNumber = 7;
+	private int actionNumber = ActionSet.ROTATE.size();
+
+	private double alpha = 0.5;
+	private double gamma = 0.5;
+	private double epsilon = 0.5; // Q値が最大の行動を選択する確率
+	private int trials = 100; // 強化学習の試行回数
+	private int steps = 1000; // １試行あたりの最大ステップ数
+	// 収束判定：平均誤差が変わらないとみなす割合、条件を満たす試行が続く回数、許す方策の変化、
+	// 試行ごとの平均誤差をならす割合
+	private double tolerance = 0.1;
+	private int patience = 30;
+	private int maxPolicyChanges = 1;
+	private double smoothing = 0.1;
+	// ラインを見失ったまま何ステップ続いたら試行を打ち切るか
+	private int maxLostSteps = 50;
+	// 学習の方法（システムプロパティ linetracer.learner で選ぶ。dyna：Dyna-Q、
+	// qlambda：Q(λ)、sarsalambda：SARSA(λ)）と、適格度トレースの減衰率
+	private String learner = System.getProperty("linetracer.learner", "dyna");
+	private double lambda = 0.3;
+	// Dyna-Q：経験から作ったモデルで、１ステップあたりに計画で更新する回数（0 なら計画しない）
+	private int planningSteps = 8;
+	// 経験再生：覚えておく遷移の数と、１ステップあたりの再生回数（0 なら再生しない。
+	// 計画と同じく１ステップを何度も使うためのものなので、Dyna-Q を使う場合は使わない）
+	private int replayCapacity = 10000;
+	private int replayBatch = 0;
+	// 学習したQテーブルをファイルに保存・読み込みするかどうか（システムプロパティ
+	// linetracer.qtable=true で有効にする。学習の設定が変わると読み込まずに学習し直す。
+	// 画面を持たない実行環境では、有効にしても使わない）
+	private boolean useQTableFile = Boolean.getBoolean("linetracer.qtable");
+	// 学習にかかった時間（ナノ秒。読み込んだ場合は 0）
+	private long learningTime = 0;
+
+	/**
+	 * 学習の設定を変更する（SweepRunner で設定を比較する場合など）
+	 * 
+	 * @param alpha   学習率
+	 * @param gamma   割引率
+	 * @param epsilon Q値が最大の行動を選択する確率
+	 * @param trials  強化学習の試行回数
+	 * @param steps   １試行あたりの最大ステップ数
+	 */
+	public void setParameters(double alpha, double gamma, double epsilon, int trials, int steps) {
+		this.alpha = alpha;
+		this.gamma = gamma;
+		this.epsilon = epsilon;
+		this.trials = trials;
+		this.steps = steps;
+	}
+
+	/**
+	 * 学習したQテーブルをファイルに保存・読み込みするかどうか指定する（画面を持たない
+	 * 実行環境では指定に関わらず使わない）
+	 * 
+	 * @param flag 保存・読み込みする場合は true
+	 */
+	public void setQTableFileEnabled(boolean flag) {
+		useQTableFile = flag;
+	}
+
+	/**
+	 * 学習にかかった時間を返す
+	 * 
+	 * @return 時間（ナノ秒。保存したQテーブルを読み込んだ場合は 0）
+	 */
+	public long getLearningTime() {
+		return learningTime;
+	}
 
 	public void run() throws InterruptedException {
 		try {
-			// step 1: Q学習する
-			QLearning q1 = new QLearning(statesNumber, actionNumber, 0.5, 0.5);
-
-			int trials = 100; // 強化学習の試行回数
-			int steps = 1000; // １試行あたりの最大ステップ数
-			for (int t = 1; t <= trials; t++) { // 試行回数だけ繰り返し
-				/* ロボットを初期位置に戻す */
-				init();
-
-				for (int s = 0; s < steps; s++) { // ステップ数だけ繰り返し
-					/* ε-Greedy 法により行動を選択 */
-
-					// ロボットとラインの位置関係から状態情報を取得する
-					int state = judgeState();
-					// epsilonを設定する
-					double epsilon = 0.5;
-					// 今のロボットの状態から適切な行動を選択する
-					int action = q1.selectAction(state, epsilon, actionNumber);
-					/* 選択した行動を実行 (ロボットを移動する) */
-					doAction(action);
-					/* 新しい状態を観測＆報酬を得る */
-
-					// 更新した後のロボットの座標における状態状態を取得する
-					int after = judgeState();
-					// 選択した行動における報酬を報酬関数から得る
-					int reward = judgeReward();
-					/* Q 値を更新 */
-
-					// デバック用：学習状況を分かりやすいように出力
-					// System.out.println("s:" + s + " t:" + t);
-
-					// 時間差分方程式によってQＴａｂｌｅを更新する
-					q1.update(state, action, after, reward);
-
-					/* もし時間差分誤差が十分小さくなれば終了 */
-
+			// step 0: 同じ条件で学習したQテーブルが保存されていれば、学習せずに読み込む
+			// （ファイルの保存・読み込みを有効にし、画面を持つ実行環境の場合のみ。
+			// 学習し直す場合はファイルを削除する）
+			File file = new File(QTableFile.fileNameFor(getMapName()));
+			boolean useFile = useQTableFile && !isHeadless();
+			QLearning q1 = null;
+			if (useFile)
+				q1 = QTableFile.load(file, statesNumber, actionNumber, alpha, gamma, getMapName(), settings());
+			if (q1 != null) {
+				System.out.println("Q-table loaded: " + file);
+			} else {
+				// step 1: Q学習する
+				long t0 = System.nanoTime();
+				q1 = learn();
+				learningTime = System.nanoTime() - t0;
+				// 次回のために保存する
+				if (useFile) {
+					try {
+						QTableFile.save(file, q1, getMapName(), settings());
+					} catch (IOException e) {
+						System.out.println("Q-table not saved: " + e);
+					}
 				}
 			}
-			System.out.println("Learning ENDS!");
 			// step 2: 学習したQテーブルの最適政策に基づいて
 			// スタート位置からゴール位置まで移動
 			/* ロボットを初期位置に戻す */
 			init();
 			q1.showQTable();
+			// 学習は終わったので、状態から行動への表を引くだけにする
+			int[] policy = q1.compilePolicy();
 			while (true) {
 				// 線を見失ったとき用に最後のLIGHTの情報を保持する
 
 				// デバッグ用
 //				System.out.println("A:" + getColor(LIGHT_A) + " B:" + getColor(LIGHT_B) + " C:" + getColor(LIGHT_C));
 
-				// 右センサの色に応じて分岐
-				doAction(q1.selectAction(judgeState()));
-
-				forward(1);
+				// 右センサの色に応じて分岐し、回転してから 1cm 前進する
+				act(ActionSet.ROTATE_FORWARD, policy[judgeState()]);
 
 				// 速度調整＆画面描画
 				delay();
@@ -78,55 +132,121 @@ public class MyRobot extends Robot {
 		}
 	}
 
-	// 報酬関数を定義
-	private int judgeReward() {
-		// 現在の座標がブロック上であれば、今後選択しないようにマイナスの大きい値を与える
-		if (isOnGoal())
-			return 1000;
-		// 現在の座標がゴール上であれば、ゴールへは最優先で向かってほしいため、非常に大きい正の値を与える
-		if (getColor(LIGHT_A) == WHITE && getColor(LIGHT_B) == WHITE && getColor(LIGHT_C) == WHITE)
-			return -100;
-		
-		if(getColor(LIGHT_A)+getColor(LIGHT_B)+getColor(LIGHT_C) <= 2 && getColor(LIGHT_B) == WHITE)
-			return 1;
-
-		// ゴールと現在位置のユークリッド距離から、ゴールに近ければ報酬は大きく、遠くなれば報酬は小さくなるような関数を設定
-		// 分子の３００は報酬の大きさを調整
-		// 分母の「＋１」は分母が０になることを防ぐため
-		return 10;
+	// 保存したQテーブルが同じ条件で学習したものか確かめるために、学習の設定を文字列にする
+	// （学習率・割引率・状態数・行動数・マップはファイルのヘッダで別に確かめる）
+	private String settings() {
+		String method = learner.equals("dyna") ? "learner=DynaQ planningSteps=" + planningSteps
+				: "learner=" + learner + " lambda=" + lambda;
+		return method
+				+ " epsilon=" + epsilon + " trials=" + trials + " steps=" + steps
+				+ " tolerance=" + tolerance + " patience=" + patience + " maxPolicyChanges=" + maxPolicyChanges
+				+ " smoothing=" + smoothing
+				+ " maxLostSteps=" + maxLostSteps + " replay=" + replayCapacity + "/" + replayBatch
+				+ " reward=" + LineTraceTask.REWARD_VERSION;
 	}
 
-	// 選択された行動に応じたロボットの座標更新を行う
-	private void doAction(int action) {
-		// マップの外の座標に更新しないように設定
-		if (action == 0)
-			rotateRight(10);
-		if (action == 1)
-			rotateRight(20);
-		if (action == 2)
-			rotateRight(30);
-		if (action == 3)
-			rotateLeft(10);
-		if (action == 4)
-			rotateLeft(20);
-		if (action == 5)
-			rotateLeft(30);
-		if (action == 6)
-			;
+	// Q学習を行い、学習したQテーブルを返す
+	private QLearning learn() {
+		// 乱数の種はシミュレーションから受け取る
+		QLearning q1 = null;
+		DynaQ dyna = null;
+		TraceLearning traces = null;
+		switch (learner) {
+		case "dyna":
+			q1 = dyna = new DynaQ(statesNumber, actionNumber, alpha, gamma, planningSteps, getSeed());
+			break;
+		case "qlambda":
+			q1 = traces = new TraceLearning(statesNumber, actionNumber, alpha, gamma, lambda,
+					TraceLearning.Q_LAMBDA, getSeed());
+			break;
+		case "sarsalambda":
+			q1 = traces = new TraceLearning(statesNumber, actionNumber, alpha, gamma, lambda,
+					TraceLearning.SARSA_LAMBDA, getSeed());
+			break;
+		default:
+			throw new IllegalArgumentException("unknown learner: " + learner);
+		}
+		// 時間差分誤差と方策の変化から収束を判定する
+		ConvergenceMonitor monitor = new ConvergenceMonitor(q1, tolerance, patience);
+		monitor.setMaxPolicyChanges(maxPolicyChanges);
+		monitor.setSmoothing(smoothing);
+		// 経験した遷移を覚えておき、１ステップごとに replayBatch 回学習し直す（再生しない場合は作らない）
+		ReplayBuffer replay = (replayBatch > 0) ? new ReplayBuffer(replayCapacity, getSeed() + 1) : null;
+
+		// 仮想環境を reset()・step() で動かす（行動は走行と同じ回転で、前進しない）
+		LineTraceEnv env = getEnvironment(ActionSet.ROTATE);
+		// 見込みのない試行は打ち切る（ゴール・マップの外に出た場合は常に終了する）
+		Episode episode = env.getEpisode();
+		episode.setMaxLostSteps(maxLostSteps);
+		episode.setMaxSteps(steps);
+		for (int t = 1; t <= trials; t++) { // 試行回数だけ繰り返し
+			/* ロボットを初期位置に戻す */
+			int state = env.reset();
+			monitor.beginEpisode();
+			if (traces != null)
+				traces.clearTraces();
+			// 適格度トレースを使う場合は、次に実行する行動を更新の前に選んでおく（まだなら -1）
+			int next = -1;
+
+			for (int s = 0; s < steps; s++) { // ステップ数だけ繰り返し
+				/* ε-Greedy 法により行動を選択 */
+
+				// 今のロボットの状態から適切な行動を選択する
+				int action = (next >= 0) ? next : q1.selectAction(state, epsilon, actionNumber);
+				/* 選択した行動を実行 (ロボットを移動する) */
+				/* 新しい状態を観測＆報酬を得る */
+
+				// 更新した後のロボットの座標における状態と、選択した行動における報酬を得る
+				LineTraceEnv.Step r = env.step(action);
+				int after = r.observation;
+				double reward = r.reward;
+				/* Q 値を更新 */
+
+				// デバック用：学習状況を分かりやすいように出力
+				// System.out.println("s:" + s + " t:" + t);
+
+				// 時間差分方程式によってQＴａｂｌｅを更新する
+				// （Dyna-Q では経験した遷移はモデルにも記録し、モデルから作った遷移でも更新する。
+				// 適格度トレースでは最近たどった状態・行動もまとめて更新する）
+				if (traces != null) {
+					next = q1.selectAction(after, epsilon, actionNumber);
+					monitor.record(traces.update(state, action, after, next, reward));
+				} else {
+					monitor.record(dyna.learn(state, action, after, reward));
+				}
+				// 覚えておいた遷移からも学習する（シミュレーションの１ステップを何度も使う）
+				if (replayBatch > 0) {
+					replay.add(state, action, after, reward);
+					replay.replay(q1, replayBatch);
+				}
+
+				// 試行の終了条件を満たせば次の試行へ
+				if (r.done)
+					break;
+				state = after;
+			}
+
+			/* もし時間差分誤差が十分小さくなれば終了 */
+			boolean converged = monitor.endEpisode();
+			// デバック用：試行ごとの時間差分誤差と方策の変化を出力
+			// System.out.println("trial " + t + " max|TD|: " + monitor.getMaxError() + " mean|TD|: "
+			//		+ monitor.getMeanError() + " policy changes: " + monitor.getPolicyChanges());
+			if (converged) {
+				System.out.println("Converged after " + t + " trials");
+				break;
+			}
+		}
+		System.out.println("Learning ENDS! (trials ended by goal: " + episode.getCount(Episode.GOAL)
+				+ ", off map: " + episode.getCount(Episode.OFF_MAP)
+				+ ", lost line: " + episode.getCount(Episode.LOST_LINE)
+				+ ", step limit: " + episode.getCount(Episode.STEP_LIMIT) + ")");
+		return q1;
 	}
 
 	// 光センサーの値の組み合わせを一意の状態に対応付ける為の関数
 	private int judgeState() {
-		///
-		int sum = 0;
-		if(getColor(LIGHT_C) == BLACK)
-			sum += 4;
-		if(getColor(LIGHT_B) == BLACK)
-			sum += 2;
-		if(getColor(LIGHT_A) == BLACK)
-			sum += 1;
-		
-		return sum;
+		// センサ C, B, A が黒ならそれぞれ 4, 2, 1 を足す（定義は LineTraceTask と共通）
+		return LineTraceTask.judgeState(readSensors());
 	}
 
 }
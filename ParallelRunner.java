@@ -0,0 +1,232 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 複数のシミュレーションを並列に実行するクラス．色判定済みのマップは変更されないので，
+ * 同じマップを使うシミュレーションどうしで一つのマップを共有する
+ */
+public class ParallelRunner
+{
+  /**
+   * 並列実行用のオブジェクトを生成する
+   * @param className 動作プログラム名(クラス名)
+   * @param threads   同時に実行するスレッド数
+   * @param maxSteps  １回の実行あたりのステップ数の上限（0 以下の場合は上限なし）
+   */
+  public ParallelRunner(String className, int threads, long maxSteps)
+  {
+    this.className = className;
+    this.threads   = threads;
+    this.maxSteps  = maxSteps;
+  }
+
+  /**
+   * 実行するシミュレーションを追加する
+   * @param lineMap 色判定済みのマップ（共有される）
+   * @param x       開始Ｘ座標
+   * @param y       開始Ｙ座標
+   * @param dir     開始時の向き（度）
+   */
+  public void add(LineMap lineMap, double x, double y, double dir)
+  {
+    jobs.add(new Job(lineMap, x, y, dir));
+  }
+
+  /**
+   * 全体の乱数の種を設定する．各シミュレーションの種は追加した順にこの種から導くので，
+   * 同じ種であれば並列に実行しても同じ結果になる
+   * @param seed 全体の乱数の種
+   */
+  public void setSeed(long seed)
+  {
+    this.seed = seed;
+  }
+
+  /**
+   * 追加した全てのシミュレーションを並列に実行する
+   * @return 追加した順の実行結果
+   */
+  public List<Result> runAll() throws InterruptedException, ExecutionException
+  {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      // 全て投入してから順に結果を集める
+      SplittableRandom seeds = new SplittableRandom(seed);
+      List<Future<Result>> futures = new ArrayList<Future<Result>>();
+      for (Job job : jobs) {
+        job.seed = seeds.split().nextLong();
+        futures.add(pool.submit(job));
+      }
+
+      List<Result> results = new ArrayList<Result>();
+      for (Future<Result> future : futures)
+        results.add(future.get());
+      return results;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * シミュレーション１回分を表す内部クラス
+   */
+  class Job implements Callable<Result>
+  {
+    /**
+     * シミュレーション１回分を生成する
+     * @param lineMap 色判定済みのマップ
+     * @param x       開始Ｘ座標
+     * @param y       開始Ｙ座標
+     * @param dir     開始時の向き（度）
+     */
+    Job(LineMap lineMap, double x, double y, double dir)
+    {
+      this.lineMap = lineMap;
+      this.x = x;
+      this.y = y;
+      this.dir = dir;
+    }
+
+    /**
+     * シミュレーションを実行する
+     * @return 実行結果
+     */
+    public Result call() throws Exception
+    {
+      // ロボットごとに独立した仮想環境を作る（マップは共有）
+      HeadlessSimulator sim = new HeadlessSimulator(HeadlessSimulator.createRobot(className), lineMap);
+      sim.getWorld().setStartPose(x, y, dir);
+      sim.getWorld().setSeed(seed);
+      sim.setMaxSteps(maxSteps);
+
+      long t0 = System.nanoTime();
+      boolean finished = sim.run();
+      long t1 = System.nanoTime();
+
+      World world = sim.getWorld();
+      return new Result(lineMap.getMapName(), x, y, dir, finished,
+                        world.getRobotRun(), world.getRobotMiss(), sim.getSteps(), t1 - t0);
+    }
+
+    /** 色判定済みのマップ */
+    private LineMap lineMap;
+    /** 開始Ｘ座標 */
+    private double x;
+    /** 開始Ｙ座標 */
+    private double y;
+    /** 開始時の向き */
+    private double dir;
+    /** 乱数の種 */
+    private long seed;
+  }
+
+  /**
+   * シミュレーション１回分の実行結果を表すクラス
+   */
+  public static class Result
+  {
+    /**
+     * 実行結果を生成する
+     */
+    Result(String mapName, double x, double y, double dir, boolean finished,
+           double run, double miss, long steps, long nanos)
+    {
+      this.mapName  = mapName;
+      this.x        = x;
+      this.y        = y;
+      this.dir      = dir;
+      this.finished = finished;
+      this.run      = run;
+      this.miss     = miss;
+      this.steps    = steps;
+      this.nanos    = nanos;
+    }
+
+    /** マップファイルの名前 */
+    public final String mapName;
+    /** 開始Ｘ座標 */
+    public final double x;
+    /** 開始Ｙ座標 */
+    public final double y;
+    /** 開始時の向き */
+    public final double dir;
+    /** プログラムが最後まで実行されたかどうか（ステップ数の上限で中断した場合は false） */
+    public final boolean finished;
+    /** 走行距離 (cm) */
+    public final double run;
+    /** ミスをした走行距離 (cm) */
+    public final double miss;
+    /** ステップ数 */
+    public final long steps;
+    /** 実行時間 (nsec) */
+    public final long nanos;
+  }
+
+  /**
+   * 起動用 main 関数．各マップについて，開始位置の向きを -30〜+30 度の範囲でずらした
+   * POSES 通りの開始位置からロボットを走らせる．全体の乱数の種はシステムプロパティ
+   * linetracer.seed で指定できる
+   * @param args コマンドライン引数の配列
+   */
+  public static void main(String[] args) throws Exception
+  {
+    // コマンドライン引数のチェック
+    if (args.length < 4) {
+      System.out.println("Usage: java ParallelRunner ROBOT_CLASSNAME MAXSTEPS POSES MAPFILE...");
+      System.exit(-1);
+    }
+
+    // 画面を使わない
+    System.setProperty("java.awt.headless", "true");
+
+    int  threads  = Runtime.getRuntime().availableProcessors();
+    long maxSteps = Long.parseLong(args[1]);
+    int  poses    = Integer.parseInt(args[2]);
+    ParallelRunner runner = new ParallelRunner(args[0], threads, maxSteps);
+
+    // マップはそれぞれ一度だけ読み込む
+    for (int i = 3; i < args.length; i++) {
+      LineMap lineMap = LineMap.load(args[i]);
+      for (int p = 0; p < poses; p++) {
+        double offset = (poses == 1) ? 0.0 : -30.0 + 60.0 * p / (poses - 1);
+        runner.add(lineMap, lineMap.getStartX(), lineMap.getStartY(), lineMap.getStartDir() + offset);
+      }
+    }
+
+    // ロボットのプログラムの出力は捨てる
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    long t0 = System.nanoTime();
+    List<Result> results;
+    try {
+      results = runner.runAll();
+    } finally {
+      System.setOut(out);
+    }
+    long t1 = System.nanoTime();
+
+    // 結果の表示
+    long total = 0;
+    System.out.println("map\tx\ty\tdir\tfinished\trun(cm)\tmiss(cm)\tsteps\ttime(ms)");
+    for (Result r : results) {
+      System.out.println(r.mapName + "\t" + r.x + "\t" + r.y + "\t" + r.dir + "\t" + r.finished + "\t"
+                         + (int)(r.run * 10) / 10.0 + "\t" + (int)(r.miss * 10) / 10.0 + "\t"
+                         + r.steps + "\t" + r.nanos / 1000000);
+      total += r.nanos;
+    }
+    System.out.println("Threads: " + threads + ", wall: " + (t1 - t0) / 1000000 + "ms, cpu sum: "
+                       + total / 1000000 + "ms");
+  }
+
+  /** 動作プログラム名(クラス名) */
+  private String className = null;
+  /** 同時に実行するスレッド数 */
+  private int threads = 1;
+  /** １回の実行あたりのステップ数の上限 */
+  private long maxSteps = 0;
+  /** 全体の乱数の種 */
+  private long seed = Long.getLong("linetracer.seed", new SplittableRandom().nextLong());
+  /** 実行するシミュレーションの一覧 */
+  private List<Job> jobs = new ArrayList<Job>();
+}
@@ -0,0 +1,163 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.lang.model.SourceVersion;
+
+/**
+ * 学習した Greedy 方策を，シミュレータに依存しない Java のクラスとして書き出すクラス．
+ * 生成したクラスは状態から行動への表を持つだけなので，そのまま EV3 の実機のプログラムに
+ * 組み込んで，配列を引くだけで（浮動小数点の計算なしに）行動を決められる
+ */
+public class PolicyExporter
+{
+  /**
+   * 方策をクラスのソースコードとして書き出す．生成するクラスの状態は LineTraceTask，行動は
+   * ActionSet.ROTATE と同じなので，状態数が LineTraceTask.STATES で行動番号が ActionSet.ROTATE の
+   * 範囲にある方策に限る
+   * @param policy    状態ごとの行動番号（QLearning.compilePolicy() の戻り値）
+   * @param className 生成するクラスの名前
+   * @param source    方策の出どころ（生成したクラスのコメントに書く．コメントを閉じたり
+   *                  Unicode エスケープとして読まれたりしないように置き換えて書く）
+   * @param out       書き出し先
+   */
+  public static void export(int[] policy, String className, String source, Writer out)
+  {
+    if (!isClassName(className))
+      throw new IllegalArgumentException("not a valid class name: " + className);
+    if (policy.length != LineTraceTask.STATES)
+      throw new IllegalArgumentException("policy has " + policy.length + " states, expected " + LineTraceTask.STATES);
+    for (int action : policy) {
+      if (action < 0 || action >= ActionSet.ROTATE.size())
+        throw new IllegalArgumentException("action out of range: " + action);
+    }
+
+    PrintWriter w = new PrintWriter(out);
+    w.println("/**");
+    w.println(" * 学習済みのライントレースの方策（PolicyExporter が " + commentText(source) + " から生成）．");
+    w.println(" * 状態は光センサ C, B, A が黒ならそれぞれ 4, 2, 1 を足した番号");
+    w.println(" */");
+    w.println("public final class " + className);
+    w.println("{");
+    w.println("  /**");
+    w.println("   * 光センサの読み取り結果から状態の番号を求める");
+    w.println("   * @param blackA 光センサ A が黒かどうか");
+    w.println("   * @param blackB 光センサ B が黒かどうか");
+    w.println("   * @param blackC 光センサ C が黒かどうか");
+    w.println("   * @return 状態の番号");
+    w.println("   */");
+    w.println("  public static int state(boolean blackA, boolean blackB, boolean blackC)");
+    w.println("  {");
+    w.println("    return (blackC ? 4 : 0) | (blackB ? 2 : 0) | (blackA ? 1 : 0);");
+    w.println("  }");
+    w.println();
+    w.println("  /**");
+    w.println("   * 状態に対する行動の番号を取得する");
+    w.println("   * @param state 状態の番号");
+    w.println("   * @return 行動の番号");
+    w.println("   */");
+    w.println("  public static int action(int state)");
+    w.println("  {");
+    w.println("    return ACTIONS[state];");
+    w.println("  }");
+    w.println();
+    w.println("  /**");
+    w.println("   * 状態に対して回転する角度を取得する");
+    w.println("   * @param state 状態の番号");
+    w.println("   * @return 回転角度（度．正が時計回り）");
+    w.println("   */");
+    w.println("  public static int rotation(int state)");
+    w.println("  {");
+    w.println("    return ROTATIONS[ACTIONS[state]];");
+    w.println("  }");
+    w.println();
+    w.println("  /** 状態ごとの行動の番号 */");
+    w.println("  public final static byte[] ACTIONS = { " + join(policy) + " };");
+    w.println("  /** 行動ごとの回転角度（度．正が時計回り） */");
+    w.println("  public final static int[] ROTATIONS = { " + join(ActionSet.ROTATE.getRotations()) + " };");
+    w.println();
+    w.println("  private " + className + "()");
+    w.println("  {");
+    w.println("  }");
+    w.println("}");
+    w.flush();
+  }
+
+  /**
+   * 生成するクラスの名前として使えるか判定する（パッケージ名を含まない名前に限る）
+   * @param name 名前
+   * @return 使える場合は true を返す
+   */
+  public static boolean isClassName(String name)
+  {
+    return SourceVersion.isIdentifier(name) && !SourceVersion.isKeyword(name);
+  }
+
+  /**
+   * 文字列をそのままコメントに書けるようにする．\ を二重にして Unicode エスケープとして
+   * 読まれないようにし，コメントを閉じる * / の間に \ を入れる
+   * @param text 文字列
+   * @return コメントに書ける文字列
+   */
+  private static String commentText(String text)
+  {
+    return text.replace("\\", "\\\\").replace("*/", "*\\/");
+  }
+
+  /**
+   * 配列の要素をカンマで区切った文字列にする
+   * @param values 配列
+   * @return 文字列
+   */
+  private static String join(int[] values)
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0)
+        sb.append(", ");
+      sb.append(values[i]);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * 起動用 main 関数．保存したＱテーブル（QTableFile）から CLASSNAME.java を生成する．
+   * 同じ名前のファイル（MyRobot.java など）がある場合は，-f を指定しない限り書き出さない
+   * @param args コマンドライン引数の配列
+   */
+  public static void main(String[] args) throws IOException
+  {
+    // 先頭の -f は既存のファイルを上書きする指定
+    boolean force = (args.length > 0 && args[0].equals("-f"));
+    if (force)
+      args = Arrays.copyOfRange(args, 1, args.length);
+
+    // コマンドライン引数のチェック
+    if (args.length < 2 || !isClassName(args[1])) {
+      System.out.println(USAGE);
+      System.exit(-1);
+    }
+
+    // 生成するクラスと同じ状態数・行動数で学習したＱテーブルに限る
+    File      file   = new File(args[0]);
+    QLearning q      = QTableFile.read(file);
+    if (q.getStates() != LineTraceTask.STATES || q.getActions() != ActionSet.ROTATE.size()) {
+      System.out.println("Q-table must have " + LineTraceTask.STATES + " states and "
+                         + ActionSet.ROTATE.size() + " actions: " + file);
+      System.out.println(USAGE);
+      System.exit(-1);
+    }
+    File      output = new File(args[1] + ".java");
+    if (output.exists() && !force) {
+      System.out.println("Output file already exists (use -f to overwrite): " + output);
+      System.out.println(USAGE);
+      System.exit(-1);
+    }
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+      export(q.compilePolicy(), args[1], file.getName(), out);
+    }
+    System.out.println("Wrote " + output);
+  }
+
+  /** 使い方 */
+  private final static String USAGE = "Usage: java PolicyExporter [-f] QTABLE_FILE CLASSNAME";
+}
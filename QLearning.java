@@ -2,9 +2,9 @@
 /**
  * Ｑ学習を行うクラス
  */
-import java.util.Random;
+import java.util.SplittableRandom;
 
-public class QLearning {
+public class QLearning implements QTable {
 
 	/**
 	 * Ｑ学習を行うオブジェクトを生成する
@@ -15,45 +15,95 @@ public class QLearning {
 	 * @param gamma   割引率（0.0〜1.0）
 	 */
 	public QLearning(int states, int actions, double alpha, double gamma) {
-		this.qTable = new double[states][actions];
+		this(states, actions, alpha, gamma, new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * 乱数の種を指定してＱ学習を行うオブジェクトを生成する（同じ種であれば同じ学習結果になる）
+	 * 
+	 * @param states  状態数
+	 * @param actions 行動数
+	 * @param alpha   学習率（0.0〜1.0）
+	 * @param gamma   割引率（0.0〜1.0）
+	 * @param seed    乱数の種
+	 */
+	public QLearning(int states, int actions, double alpha, double gamma, long seed) {
+		//Ｑテーブルは状態×行動数の一次元配列に詰めて持つ（状態 s の行は s*actions から始まる）
+		this.qTable = new double[states * actions];
+		this.states = states;
+		this.actions = actions;
 		this.alpha = alpha;
 		this.gamma = gamma;
+		//状態ごとの最大値を覚えておく。最初は全て０なので、全ての行動が最大値と等しい
+		this.best = new BestActionCache(states, actions);
+		//行動選択に使う乱数は使い回す
+		this.rand = new SplittableRandom(seed);
+	}
+
+	/**
+	 * 行動選択に使う乱数の種を設定し直す
+	 * 
+	 * @param seed 乱数の種
+	 */
+	public void setSeed(long seed) {
+		rand = new SplittableRandom(seed);
 	}
 
 	/**
 	 * epsilon-Greedy 法により行動を選択する
 	 * 
 	 * @param state    現在の状態
-	 * @param epsilon  ランダムに行動を選択する確率（0.0〜1.0）
+	 * @param epsilon  Ｑ値が最大の行動を選択する確率（0.0〜1.0）。名前と違いランダムに選ぶ確率ではない
+	 *                 （ランダムに選ぶ確率で指定する場合や、減らしていく場合は EpsilonGreedy を使う）
 	 * @param mazeData
 	 * @param y
 	 * @param x
 	 * @return 選択された行動番号
 	 */
 	public int selectAction(int state, double epsilon, int actionNumber) {
-		int action;
-		Random rand = new Random();
-		//最初に設定する借りの最大値はランダムに設定する
-		//これにより値が等しいQ値が複数あったとしても、特定の方向だけ選択するというような事を防いでいる。
-		int max = rand.nextInt(actionNumber);
-		//maxはQ値が最大である行動を示している
-		//行動４つに対するQ値の中から最大値を見つける
-		for (int i = 1; i < qTable[state].length; i++) {
-			if (qTable[state][i] >= qTable[state][max]) {
-				max = i;
-			}
-		}
 		// 100*epsilonで１〜１００の乱数と比べる。
 		int num = rand.nextInt(100);
 		if (num < 100 * epsilon)
-			action = max;
-		else {
-			//一定の確率でランダムに行動を選択する
-			int randAction = rand.nextInt(actionNumber);
-			action = randAction;
-		}
-		//行動を表す番号を返す
-		return action;
+			return greedyAction(state);
+		//一定の確率でランダムに行動を選択する
+		return rand.nextInt(actionNumber);
+	}
+
+	//QTable として long 型の状態で呼ぶ場合（0〜状態数-1 の範囲外は IllegalArgumentException）
+	public int selectAction(long state, double epsilon, int actionNumber) {
+		return selectAction(index(state), epsilon, actionNumber);
+	}
+
+	/**
+	 * 指定した方法（ExplorationStrategy）で行動を選択する
+	 * 
+	 * @param state    現在の状態
+	 * @param strategy 行動を選択する方法
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(int state, ExplorationStrategy strategy) {
+		return strategy.selectAction(this, state);
+	}
+
+	/**
+	 * Ｑ値が最大の行動を選択する。最大値が複数ある場合はその中からランダムに選ぶ
+	 * 
+	 * @param state 現在の状態
+	 * @return 選択された行動番号
+	 */
+	public int selectGreedyAction(int state) {
+		return greedyAction(state);
+	}
+
+	//QTable として long 型の状態で呼ぶ場合（0〜状態数-1 の範囲外は IllegalArgumentException）
+	public int selectGreedyAction(long state) {
+		return greedyAction(index(state));
+	}
+
+	//値が等しいQ値が複数あったとしても、特定の方向だけ選択するというような事を防いでいる
+	//（最大値が一つしか無い場合は表を走査しない）
+	private int greedyAction(int state) {
+		return best.greedyAction(qTable, state, rand);
 	}
 
 	/**
@@ -63,15 +113,24 @@ public class QLearning {
 	 * @return 選択された行動番号
 	 */
 	//最終的なｑＴａｂｌｅの値を参照して行動を純粋に選択するためのプログラム
-	//最大値を例外なく選択するように作成
+	//最大値を例外なく選択するように作成（最大値が複数ある場合は番号が最も小さい行動）
 	public int selectAction(int state) {
-		int max = 0;
-		for (int i = 1; i < qTable[state].length; i++) {
-			if (qTable[state][i] > qTable[state][max]) {
-				max = i;
-			}
-		}
-		return max;
+		return best.getBestAction(state);
+	}
+
+	//QTable として long 型の状態で呼ぶ場合（0〜状態数-1 の範囲外は IllegalArgumentException）
+	public int selectAction(long state) {
+		return best.getBestAction(index(state));
+	}
+
+	/**
+	 * 今のＱテーブルの Greedy 方策を、状態から行動への配列として取り出す。学習が終わった後は
+	 * policy[state] を引くだけで selectAction(state) と同じ行動が得られる
+	 * 
+	 * @return 状態ごとの行動番号（最大値が複数ある場合は番号が最も小さい行動）
+	 */
+	public int[] compilePolicy() {
+		return best.copyBestActions(states);
 	}
 
 	/**
@@ -81,41 +140,123 @@ public class QLearning {
 	 * @param action 行動
 	 * @param after  遷移後の状態
 	 * @param reward 報酬
+	 * @return 時間差分誤差（更新前のＱ値と目標値の差）
 	 */
-	public void update(int before, int action, int after, double reward) {
-		//時間差分方程式を計算する
-		qTable[before][action] = qTable[before][action]
-				+ (alpha * (reward + gamma * qTable[after][selectAction(after)] - qTable[before][action]));
+	public double update(int before, int action, int after, double reward) {
+		//時間差分方程式を計算する（遷移後の状態の最大値は覚えておいた値を使う）
+		double q = qTable[before * actions + action];
+		double tdError = reward + gamma * best.getBestValue(after) - q;
+		store(before, action, q + alpha * tdError);
 //デバック用コード　ｑＴｂａｌｅの内容をここで表示する。
 //デバック時以外は処理速度を遅くしてしまうので、非表示にする。
-//		System.out.println("/////////////////////////");
-//		for (int i = 0; i < qTable.length; i++) {
-//			System.out.print("S " + i + " : ");
-//			for (int j = 0; j < qTable[i].length; j++) {
-//				System.out.print(qTable[i][j] + " ");
-//			}
-//			System.out.println();
-//		}
-	}
-	
+//		showQTable();
+		return tdError;
+	}
+
+	//QTable として long 型の状態で呼ぶ場合（0〜状態数-1 の範囲外は IllegalArgumentException）
+	public double update(long before, int action, long after, double reward) {
+		return update(index(before), action, index(after), reward);
+	}
+
+	/**
+	 * Ｑ値を書き換え、状態ごとの最大値を更新する
+	 * 
+	 * @param state  状態
+	 * @param action 行動
+	 * @param value  新しいＱ値
+	 */
+	protected void store(int state, int action, double value) {
+		best.store(qTable, state, action, value);
+	}
+
+	/**
+	 * long 型の状態の番号を表の添字にする
+	 * 
+	 * @param state 状態の番号
+	 * @return 添字
+	 */
+	private int index(long state) {
+		if (state < 0 || state >= states)
+			throw new IllegalArgumentException("state out of range: " + state);
+		return (int) state;
+	}
+
 	public void showQTable() {
 		System.out.println("/////////////////////////");
-		for (int i = 0; i < qTable.length; i++) {
+		for (int i = 0; i < states; i++) {
 			System.out.print("S " + i + " : ");
-			for (int j = 0; j < qTable[i].length; j++) {
-				System.out.print(qTable[i][j] + " ");
+			for (int j = 0; j < actions; j++) {
+				System.out.print(qTable[i * actions + j] + " ");
 			}
 			System.out.println();
 		}
 	}
 
 	// フィールド
-	private double qTable[][] = null;
+	private double qTable[] = null;
+	private int states = 0;
+	private int actions = 0;
 	private double alpha = 0;
 	private double gamma = 0;
+	//状態ごとの最大のＱ値、その行動（番号が最も小さいもの）、最大値と等しい行動の数
+	private BestActionCache best = null;
+	//行動選択に使う乱数
+	private SplittableRandom rand = null;
 
 	//指定されたQTableの値を返す
 	public double getQTable(int state, int action) {
-		return qTable[state][action];
+		return qTable[state * actions + action];
+	}
+
+	//指定されたQTableの値を設定する（学習済みの値を読み込む場合など）
+	public void setQTable(int state, int action, double value) {
+		store(state, action, value);
+	}
+
+	//Ｑテーブル全体を設定する（状態ごとに行動の順に並べた配列）
+	public void setQTable(double[] values) {
+		System.arraycopy(values, 0, qTable, 0, qTable.length);
+		for (int s = 0; s < states; s++)
+			best.rescan(qTable, s);
+	}
+
+	//QTable として long 型の状態で呼ぶ場合（0〜状態数-1 の範囲外は IllegalArgumentException）
+	public double getQTable(long state, int action) {
+		return getQTable(index(state), action);
+	}
+
+	//状態の最大のＱ値を返す
+	public double getMaxValue(int state) {
+		return best.getBestValue(state);
+	}
+
+	//QTable として long 型の状態で呼ぶ場合（0〜状態数-1 の範囲外は IllegalArgumentException）
+	public double getMaxValue(long state) {
+		return best.getBestValue(index(state));
+	}
+
+	//状態数を返す
+	public int getStates() {
+		return states;
+	}
+
+	//状態の番号は 0〜状態数-1 なので、index 番目の状態は index
+	public long getState(int index) {
+		return index;
+	}
+
+	//行動数を返す
+	public int getActions() {
+		return actions;
+	}
+
+	//学習率を返す
+	public double getAlpha() {
+		return alpha;
+	}
+
+	//割引率を返す
+	public double getGamma() {
+		return gamma;
 	}
 }
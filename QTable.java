@@ -0,0 +1,62 @@
+
+/**
+ * Ｑ値を持ち、行動選択と更新を行うＱテーブルのインタフェース
+ * 
+ * 状態は long 型の番号で表す。QLearning（状態数が決まった表。番号は 0〜状態数-1）と
+ * HashedQTable（訪れた状態だけを持つ表）が実装するので、ExplorationStrategy・
+ * ConvergenceMonitor・ReplayBuffer はどちらにも使える
+ */
+public interface QTable {
+
+	/**
+	 * epsilon-Greedy 法により行動を選択する
+	 * 
+	 * @param state        現在の状態
+	 * @param epsilon      Ｑ値が最大の行動を選択する確率（0.0〜1.0）
+	 * @param actionNumber 行動数
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(long state, double epsilon, int actionNumber);
+
+	/**
+	 * Greedy 法により行動を選択する（最大値が複数ある場合は番号が最も小さい行動）
+	 * 
+	 * @param state 現在の状態
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(long state);
+
+	/**
+	 * Ｑ値が最大の行動を選択する。最大値が複数ある場合はその中からランダムに選ぶ
+	 * 
+	 * @param state 現在の状態
+	 * @return 選択された行動番号
+	 */
+	public int selectGreedyAction(long state);
+
+	/**
+	 * Ｑ値を更新する
+	 * 
+	 * @param before 状態
+	 * @param action 行動
+	 * @param after  遷移後の状態
+	 * @param reward 報酬
+	 * @return 時間差分誤差（更新前のＱ値と目標値の差）
+	 */
+	public double update(long before, int action, long after, double reward);
+
+	//指定されたQTableの値を返す
+	public double getQTable(long state, int action);
+
+	//状態の最大のＱ値を返す
+	public double getMaxValue(long state);
+
+	//表に行がある状態の数を返す
+	public int getStates();
+
+	//index 番目（0〜getStates()-1）の状態の番号を返す
+	public long getState(int index);
+
+	//行動数を返す
+	public int getActions();
+}
@@ -0,0 +1,197 @@
+
+/**
+ * Ｑテーブルをバイナリファイルとして保存・読み込みするクラス
+ * 
+ * ファイルの形式（ビッグエンディアン）：
+ *   int    MAGIC ("QTBL")
+ *   int    VERSION
+ *   int    状態数
+ *   int    行動数
+ *   double 学習率
+ *   double 割引率
+ *   int    マップ名のバイト数、続いてマップ名 (UTF-8)
+ *   int    学習の設定のバイト数、続いて学習の設定 (UTF-8)
+ *   （8 バイト境界まで 0 で埋める）
+ *   double Ｑ値 × 状態数 × 行動数（状態ごとに行動の順）
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public class QTableFile {
+
+	/**
+	 * マップ名から保存先のファイル名を決める（map1-rect.png なら map1-rect.qtable）
+	 * 
+	 * @param mapName マップ画像のファイル名
+	 * @return 保存先のファイル名
+	 */
+	public static String fileNameFor(String mapName) {
+		String name = new File(mapName).getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return name + ".qtable";
+	}
+
+	/**
+	 * Ｑテーブルを保存する。一時ファイルに書いてから置き換えるので、読み込み中の
+	 * ファイルを書き換えることはない
+	 * 
+	 * @param file     保存先のファイル
+	 * @param q        保存するＱテーブル
+	 * @param mapName  学習に使ったマップ画像のファイル名
+	 * @param settings 学習の設定（学習方法・試行回数など。読み込むときに同じ設定か確認する）
+	 */
+	public static void save(File file, QLearning q, String mapName, String settings) throws IOException {
+		byte[] name = new File(mapName).getName().getBytes(StandardCharsets.UTF_8);
+		byte[] conf = settings.getBytes(StandardCharsets.UTF_8);
+		int header = headerSize(name.length, conf.length);
+		int states = q.getStates();
+		int actions = q.getActions();
+
+		ByteBuffer buf = ByteBuffer.allocate(header + states * actions * 8);
+		buf.putInt(MAGIC);
+		buf.putInt(VERSION);
+		buf.putInt(states);
+		buf.putInt(actions);
+		buf.putDouble(q.getAlpha());
+		buf.putDouble(q.getGamma());
+		buf.putInt(name.length);
+		buf.put(name);
+		buf.putInt(conf.length);
+		buf.put(conf);
+		buf.position(header);
+		for (int s = 0; s < states; s++)
+			for (int a = 0; a < actions; a++)
+				buf.putDouble(q.getQTable(s, a));
+		buf.flip();
+
+		//同じディレクトリの一時ファイルに書き、書き終わってから置き換える
+		File dir = file.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+				FileChannel ch = raf.getChannel();
+				while (buf.hasRemaining())
+					ch.write(buf);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * 保存したＱテーブルをメモリマップして読み込む。条件が一致しない場合やファイルが
+	 * 無い・壊れている場合は null を返す（学習し直す必要がある）
+	 * 
+	 * @param file     保存したファイル
+	 * @param states   状態数
+	 * @param actions  行動数
+	 * @param alpha    学習率
+	 * @param gamma    割引率
+	 * @param mapName  マップ画像のファイル名
+	 * @param settings 学習の設定（save() で指定したものと同じでなければ読み込まない）
+	 * @return 読み込んだＱテーブル、または null
+	 */
+	public static QLearning load(File file, int states, int actions, double alpha, double gamma, String mapName,
+			String settings) {
+		if (!file.isFile())
+			return null;
+
+		try {
+			QLearning q = read(file, mapName, settings);
+			if (q == null || q.getStates() != states || q.getActions() != actions)
+				return null;
+			if (q.getAlpha() != alpha || q.getGamma() != gamma)
+				return null;
+			return q;
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 保存したＱテーブルを、保存したときの条件（状態数・行動数・学習率・割引率）のまま読み込む
+	 * 
+	 * @param file 保存したファイル
+	 * @return 読み込んだＱテーブル
+	 */
+	public static QLearning read(File file) throws IOException {
+		return read(file, null, null);
+	}
+
+	/**
+	 * 保存したＱテーブルをメモリマップして読み込む
+	 * 
+	 * @param file     保存したファイル
+	 * @param mapName  マップ画像のファイル名（null の場合は確認しない）
+	 * @param settings 学習の設定（null の場合は確認しない）
+	 * @return 読み込んだＱテーブル。マップか学習の設定が一致しない場合は null
+	 */
+	private static QLearning read(File file, String mapName, String settings) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel ch = raf.getChannel();
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+
+			//ヘッダを読む
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+				throw new IOException("not a Q-table file: " + file);
+			int states = buf.getInt();
+			int actions = buf.getInt();
+			double alpha = buf.getDouble();
+			double gamma = buf.getDouble();
+			if (states <= 0 || actions <= 0)
+				throw new IOException("broken Q-table file: " + file);
+			byte[] name = readBytes(buf, file);
+			if (mapName != null && !new String(name, StandardCharsets.UTF_8).equals(new File(mapName).getName()))
+				return null;
+			byte[] conf = readBytes(buf, file);
+			if (settings != null && !new String(conf, StandardCharsets.UTF_8).equals(settings))
+				return null;
+
+			//Ｑ値はマップした領域からまとめてコピーする
+			int header = headerSize(name.length, conf.length);
+			if (header > buf.limit())
+				throw new IOException("broken Q-table file: " + file);
+			buf.position(header);
+			DoubleBuffer values = buf.asDoubleBuffer();
+			if (values.remaining() != (long) states * actions)
+				throw new IOException("broken Q-table file: " + file);
+			double[] table = new double[states * actions];
+			values.get(table);
+
+			QLearning q = new QLearning(states, actions, alpha, gamma);
+			q.setQTable(table);
+			return q;
+		}
+	}
+
+	//長さ付きのバイト列を読む。長さが負か残りより長い（壊れたファイル）場合は IOException
+	private static byte[] readBytes(ByteBuffer buf, File file) throws IOException {
+		int length = buf.getInt();
+		if (length < 0 || length > buf.remaining())
+			throw new IOException("broken Q-table file: " + file);
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return bytes;
+	}
+
+	//ヘッダの大きさ（Ｑ値が 8 バイト境界から始まるように切り上げる）
+	private static int headerSize(int nameLength, int settingsLength) {
+		int size = 4 * 4 + 8 * 2 + 4 + nameLength + 4 + settingsLength;
+		return (size + 7) & ~7;
+	}
+
+	// 定数
+	private static final int MAGIC = 0x5154424c; // "QTBL"
+	private static final int VERSION = 2;
+}
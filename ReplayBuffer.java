@@ -0,0 +1,97 @@
+
+/**
+ * 経験再生（Experience Replay）を行うクラス
+ * 
+ * 遷移（状態・行動・報酬・遷移後の状態）を決まった数だけ覚えておき、古いものから
+ * 上書きする（リングバッファ）。覚えた遷移からランダムに選んでＱ値を更新し直すことで、
+ * シミュレーションの１ステップを何度も学習に使う。遷移は要素ごとの配列に持つので、
+ * 追加・再生でオブジェクトを生成しない
+ */
+import java.util.SplittableRandom;
+
+public class ReplayBuffer {
+
+	/**
+	 * 経験再生を行うオブジェクトを生成する
+	 * 
+	 * @param capacity 覚えておく遷移の数（１以上）
+	 * @param seed     遷移を選ぶ乱数の種
+	 */
+	public ReplayBuffer(int capacity, long seed) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.states = new long[capacity];
+		this.actions = new int[capacity];
+		this.rewards = new double[capacity];
+		this.afters = new long[capacity];
+		this.capacity = capacity;
+		this.rand = new SplittableRandom(seed);
+	}
+
+	/**
+	 * 遷移を追加する。いっぱいの場合は最も古い遷移を上書きする
+	 * 
+	 * @param before 状態
+	 * @param action 行動
+	 * @param after  遷移後の状態
+	 * @param reward 報酬
+	 */
+	public void add(long before, int action, long after, double reward) {
+		states[next] = before;
+		actions[next] = action;
+		afters[next] = after;
+		rewards[next] = reward;
+		if (++next == capacity)
+			next = 0;
+		if (size < capacity)
+			size++;
+	}
+
+	/**
+	 * 覚えている遷移からランダムに選んでＱ値を更新する
+	 * 
+	 * @param q     更新するＱテーブル
+	 * @param batch 更新する回数
+	 * @return 更新した回数（覚えている遷移が無い場合は０）
+	 */
+	public int replay(QTable q, int batch) {
+		if (size == 0)
+			return 0;
+		for (int i = 0; i < batch; i++) {
+			int k = rand.nextInt(size);
+			q.update(states[k], actions[k], afters[k], rewards[k]);
+		}
+		return batch;
+	}
+
+	/**
+	 * 覚えている遷移を全て捨てる
+	 */
+	public void clear() {
+		next = 0;
+		size = 0;
+	}
+
+	//覚えている遷移の数を返す
+	public int size() {
+		return size;
+	}
+
+	//覚えておける遷移の数を返す
+	public int getCapacity() {
+		return capacity;
+	}
+
+	// フィールド
+	//遷移を要素ごとに持つ（添字が同じものが一つの遷移）
+	private long states[] = null;
+	private int actions[] = null;
+	private double rewards[] = null;
+	private long afters[] = null;
+	private int capacity = 0;
+	//次に書き込む位置と、覚えている遷移の数
+	private int next = 0;
+	private int size = 0;
+	//遷移を選ぶ乱数
+	private SplittableRandom rand = null;
+}
@@ -17,7 +17,17 @@ public abstract class Robot
    */
   public void setModel(Model model)
   {
-    this.model = model;
+    setEngine(model);
+  }
+
+  /**
+   * 実行環境を登録する
+   * @param engine 実行環境（Model または HeadlessSimulator）
+   */
+  public void setEngine(SimulationEngine engine)
+  {
+    this.engine = engine;
+    this.world  = engine.getWorld();
   }
   
   /**
@@ -25,7 +35,7 @@ public abstract class Robot
    */
   public void init()
   {
-    model.init();
+    world.init();
   }
   
   /**
@@ -38,7 +48,57 @@ public abstract class Robot
    */
   public void delay() throws InterruptedException
   {
-    model.delay();
+    engine.delay();
+  }
+  
+  /**
+   * 画面を持たない実行環境（HeadlessSimulator や並列実行）で動いているか判定する．
+   * その場合，同時に実行される他のロボットや次の実行に影響するファイルの保存・読み込みは
+   * 行わないようにする
+   * @return 画面を持たない実行環境の場合は true を返す
+   */
+  public boolean isHeadless()
+  {
+    return engine.isHeadless();
+  }
+  
+  /**
+   * 乱数の種を取得する．学習などで乱数を使う場合はこの種を使うと，
+   * 同じ種のシミュレーションで同じ結果を再現できる
+   * @return 乱数の種
+   */
+  public long getSeed()
+  {
+    return world.getSeed();
+  }
+  
+  /**
+   * 学習の試行（エピソード）の終了条件を取得する．init() で新しい試行が始まる
+   * @return 試行の終了条件
+   */
+  public Episode getEpisode()
+  {
+    return world.getEpisode();
+  }
+  
+  /**
+   * このロボットの仮想環境を動かす学習環境を取得する．学習のループを
+   * reset()・step() の組み合わせで書ける
+   * @param actions 行動の集まり
+   * @return 学習環境
+   */
+  public LineTraceEnv getEnvironment(ActionSet actions)
+  {
+    return new LineTraceEnv(world, actions);
+  }
+  
+  /**
+   * 走行しているマップ画像のファイル名を取得する
+   * @return マップ画像のファイル名
+   */
+  public String getMapName()
+  {
+    return world.getLineMap().getMapName();
   }
   
   /**
@@ -47,7 +107,7 @@ public abstract class Robot
    */
   public void forward(double cm)
   {
-    model.forwardRobot(cm);
+    world.forwardRobot(cm);
   }
   
   /**
@@ -56,7 +116,7 @@ public abstract class Robot
    */
   public void backward(double cm)
   {
-    model.forwardRobot(-cm);
+    world.forwardRobot(-cm);
   }
   
   /**
@@ -66,7 +126,7 @@ public abstract class Robot
    */
   public void rotate(double angle)
   {
-    model.rotateRobot(angle);
+    world.rotateRobot(angle);
   }
   
   /**
@@ -75,7 +135,7 @@ public abstract class Robot
    */
   public void rotateRight(double angle)
   {
-    model.rotateRobot(angle);
+    world.rotateRobot(angle);
   }
   
   /**
@@ -84,7 +144,17 @@ public abstract class Robot
    */    
   public void rotateLeft(double angle)
   {
-    model.rotateRobot(-angle);
+    world.rotateRobot(-angle);
+  }
+  
+  /**
+   * 行動の集まりから行動を１つ実行する（ActionSet.apply と同じく，回転してから前進する）
+   * @param actions 行動の集まり
+   * @param action  行動番号
+   */
+  public void act(ActionSet actions, int action)
+  {
+    actions.apply(world, action);
   }
   
   /**
@@ -94,7 +164,56 @@ public abstract class Robot
    */
   public int getColor(int lightNo)
   {
-    return model.getColor(lightNo);
+    return world.getColor(lightNo);
+  }
+
+  /**
+   * 全ての光センサを使って色をまとめて読み取る
+   * @return 各光センサの色をまとめた値（sensorColor で取り出す）
+   */
+  public int readSensors()
+  {
+    return world.readSensors();
+  }
+
+  /**
+   * 全ての光センサを使って色をまとめて読み取る
+   * @param colors 各光センサの色を格納する配列（光センサ番号の順）
+   */
+  public void readSensors(int[] colors)
+  {
+    world.readSensors(colors);
+  }
+
+  /**
+   * 光センサで明るさを読み取る．色（WHITE/BLACK など）と違い，ラインの境界付近では
+   * 中間の値になる
+   * @param lightNo 光センサ番号
+   * @return 明るさ（0.0 が黒，1.0 が白）
+   */
+  public double getIntensity(int lightNo)
+  {
+    return world.getIntensity(lightNo);
+  }
+
+  /**
+   * 全ての光センサで明るさをまとめて読み取る
+   * @param intensities 各光センサの明るさを格納する配列（光センサ番号の順）
+   */
+  public void readIntensities(double[] intensities)
+  {
+    world.readIntensities(intensities);
+  }
+
+  /**
+   * readSensors() でまとめて読み取った値から光センサの色を取り出す
+   * @param sensors readSensors() の戻り値
+   * @param lightNo 光センサ番号
+   * @return 色番号
+   */
+  public static int sensorColor(int sensors, int lightNo)
+  {
+    return (sensors >> (lightNo * 8)) & 0xff;
   }
 
   /**
@@ -103,12 +222,14 @@ public abstract class Robot
    */
   public boolean isOnGoal()
   {
-    boolean ongoal = getColor(LIGHT_A) == GREEN || getColor(LIGHT_B) == GREEN || getColor(LIGHT_C) == GREEN;
+    int sensors = readSensors();
+    boolean ongoal = sensorColor(sensors, LIGHT_A) == GREEN || sensorColor(sensors, LIGHT_B) == GREEN
+                  || sensorColor(sensors, LIGHT_C) == GREEN;
 
     // もしゴールしたならば，走行距離とミスを表示する
     if (ongoal) {
-      double run  = (int)(model.getRobotRun()  * 10) / 10.0;
-      double miss = (int)(model.getRobotMiss() * 10) / 10.0;
+      double run  = (int)(world.getRobotRun()  * 10) / 10.0;
+      double miss = (int)(world.getRobotMiss() * 10) / 10.0;
       System.out.println(" Run: " + run + "cm");
       System.out.println(" Miss: " + miss + "cm");
     }
@@ -132,6 +253,8 @@ public abstract class Robot
   /** 不明な色を表す定数 */
   public final static int UNKNOWN_COLOR = 5;
 
-  /** モデルオブジェクトへの参照 */
-  private Model model = null;
+  /** 実行環境への参照 */
+  private SimulationEngine engine = null;
+  /** 仮想環境への参照 */
+  private World world = null;
 }
@@ -0,0 +1,18 @@
+/**
+ * ロボットのプログラムの実行を外から中断するための例外．ロボットのプログラムが
+ * catch (Exception e) で例外を捕まえていても中断できるように Error を継承する
+ */
+public class RobotStopped extends Error
+{
+  /**
+   * 中断用の例外を生成する
+   * @param reason 中断の理由
+   */
+  public RobotStopped(String reason)
+  {
+    super(reason);
+  }
+
+  /** シリアライズ用のバージョン番号 */
+  private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,127 @@
+
+/**
+ * 複数のスレッドから同時に更新できるＱテーブル
+ * 
+ * ロックは使わず、Ｑ値の書き換えは比較交換（CAS）で行い、他のスレッドと同時に書き換えた
+ * 場合はやり直す（Hogwild のように上書きして更新を失うことはない）。遷移後の状態の最大値は
+ * 行を走査して求める
+ */
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class SharedQTable {
+
+	/**
+	 * 共有するＱテーブルを生成する
+	 * 
+	 * @param states  状態数
+	 * @param actions 行動数
+	 * @param alpha   学習率（0.0〜1.0）
+	 * @param gamma   割引率（0.0〜1.0）
+	 */
+	public SharedQTable(int states, int actions, double alpha, double gamma) {
+		//Ｑ値は double のビット列として持ち、ロックを使わずに比較交換で書き換える
+		this.qTable = new AtomicLongArray(states * actions);
+		this.states = states;
+		this.actions = actions;
+		this.alpha = alpha;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * epsilon-Greedy 法により行動を選択する（QLearning と同じく epsilon は最大値を選ぶ確率）
+	 * 
+	 * @param state        現在の状態
+	 * @param epsilon      Ｑ値が最大の行動を選択する確率（0.0〜1.0）
+	 * @param actionNumber 行動数
+	 * @param rand         スレッドごとの乱数
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(int state, double epsilon, int actionNumber, SplittableRandom rand) {
+		int num = rand.nextInt(100);
+		if (num >= 100 * epsilon)
+			return rand.nextInt(actionNumber);
+
+		//最大値と等しい行動が複数あればその中からランダムに選ぶ
+		int base = state * actions;
+		double max = Double.NEGATIVE_INFINITY;
+		int action = 0;
+		int count = 0;
+		for (int i = 0; i < actions; i++) {
+			double q = get(base + i);
+			if (q > max) {
+				max = q;
+				action = i;
+				count = 1;
+			} else if (q == max && rand.nextInt(++count) == 0) {
+				action = i;
+			}
+		}
+		return action;
+	}
+
+	/**
+	 * Greedy 法により行動を選択する
+	 * 
+	 * @param state 現在の状態
+	 * @return 選択された行動番号（最大値が複数ある場合は番号が最も小さい行動）
+	 */
+	public int selectAction(int state) {
+		int base = state * actions;
+		int max = 0;
+		for (int i = 1; i < actions; i++) {
+			if (get(base + i) > get(base + max))
+				max = i;
+		}
+		return max;
+	}
+
+	/**
+	 * Ｑ値を更新する。他のスレッドと同時に書き換えた場合はやり直すので、更新は失われない
+	 * 
+	 * @param before 状態
+	 * @param action 行動
+	 * @param after  遷移後の状態
+	 * @param reward 報酬
+	 */
+	public void update(int before, int action, int after, double reward) {
+		double next = get(after * actions + selectAction(after));
+		int i = before * actions + action;
+		while (true) {
+			long bits = qTable.get(i);
+			double q = Double.longBitsToDouble(bits);
+			double value = q + (alpha * (reward + gamma * next - q));
+			if (qTable.compareAndSet(i, bits, Double.doubleToRawLongBits(value)))
+				return;
+		}
+	}
+
+	/**
+	 * 現在のＱ値を QLearning にコピーする（学習後の実行用）
+	 * 
+	 * @return Ｑ値をコピーした QLearning
+	 */
+	public QLearning toQLearning() {
+		QLearning q = new QLearning(states, actions, alpha, gamma);
+		for (int s = 0; s < states; s++)
+			for (int a = 0; a < actions; a++)
+				q.setQTable(s, a, getQTable(s, a));
+		return q;
+	}
+
+	private double get(int i) {
+		return Double.longBitsToDouble(qTable.get(i));
+	}
+
+	// フィールド
+	private AtomicLongArray qTable = null;
+	private int states = 0;
+	private int actions = 0;
+	private double alpha = 0;
+	private double gamma = 0;
+
+	//指定されたQTableの値を返す
+	public double getQTable(int state, int action) {
+		return get(state * actions + action);
+	}
+}
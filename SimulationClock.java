@@ -0,0 +1,77 @@
+/**
+ * 画面付きのシミュレーションの時計を表すクラス．ロボットの１ステップごとに
+ * 描画するかどうかと待ち時間を決める．
+ * 描画１回あたりのステップ数が 1 の場合は従来通り毎ステップ描画して待ち，
+ * N の場合は N ステップごとに描画して待ち，UNTHROTTLED の場合は待たずに
+ * 一定時間 (FRAME_INTERVAL) ごとに描画する
+ */
+public class SimulationClock
+{
+  /**
+   * ロボットを１ステップ進める
+   * @return このステップの後に描画する場合は true を返す
+   */
+  public boolean tick()
+  {
+    int n = stepsPerFrame;
+
+    // 待たずに実行する場合は，経過時間で描画するかどうかを決める
+    if (n == UNTHROTTLED) {
+      long now = System.nanoTime();
+      if (now - lastFrame < FRAME_INTERVAL)
+        return false;
+      lastFrame = now;
+      return true;
+    }
+
+    // N ステップごとに描画する
+    if (++steps < n)
+      return false;
+    steps = 0;
+    return true;
+  }
+
+  /**
+   * このステップの後に待つ時間を取得する
+   * @param frame このステップの後に描画するかどうか（tick() の戻り値）
+   * @return 待ち時間 (msec)
+   */
+  public long getWaitMillis(boolean frame)
+  {
+    if (!frame || stepsPerFrame == UNTHROTTLED)
+      return 0;
+    return delay;
+  }
+
+  /**
+   * 描画１回あたりのステップ数を設定する
+   * @param n ステップ数．UNTHROTTLED の場合は待たずに実行する
+   */
+  public void setStepsPerFrame(int n)
+  {
+    stepsPerFrame = n;
+  }
+
+  /**
+   * 描画ごとの待ち時間を設定する
+   * @param delay 待ち時間 (msec)
+   */
+  public void setDelay(long delay)
+  {
+    this.delay = delay;
+  }
+
+  /** 描画１回あたりのステップ数：待たずに実行する */
+  public final static int UNTHROTTLED = 0;
+  /** 待たずに実行する場合の描画間隔 (nsec) */
+  private final static long FRAME_INTERVAL = 1000000000L / 30;
+
+  /** 描画１回あたりのステップ数 */
+  private volatile int stepsPerFrame = 1;
+  /** 描画ごとの待ち時間 (msec) */
+  private volatile long delay = 100;
+  /** 前回描画してからのステップ数 */
+  private int steps = 0;
+  /** 前回描画した時刻 (nsec) */
+  private long lastFrame = 0;
+}
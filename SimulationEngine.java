@@ -0,0 +1,24 @@
+/**
+ * ロボットのプログラムを実行する環境を表すインタフェース．画面を持つ Model と，
+ * 画面を持たない HeadlessSimulator がこれを実装する
+ */
+public interface SimulationEngine
+{
+  /**
+   * ロボットが走行する仮想環境を取得する
+   * @return 仮想環境
+   */
+  public World getWorld();
+
+  /**
+   * 速度調整＆描画更新（ロボットの１ステップごとに呼ばれる）
+   */
+  public void delay() throws InterruptedException;
+
+  /**
+   * 画面を持たない（一括実行・並列実行などの）環境かどうか判定する．ロボットのプログラムは
+   * この場合にファイルの保存・読み込みなど，実行ごとに結果が変わる処理を行わないようにする
+   * @return 画面を持たない環境の場合は true を返す
+   */
+  public boolean isHeadless();
+}
@@ -0,0 +1,82 @@
+
+/**
+ * ソフトマックス（ボルツマン）法で行動を選択するクラス
+ * 
+ * 行動 a を exp(Q(s,a)/T) に比例する確率で選ぶ。温度 T が高いほどランダムに、低いほど
+ * Greedy に近くなる。試行ごとに T に decay を掛けて下限 minTemperature まで下げる。
+ * exp は (Q - 最大値)/T ≦ 0 の範囲だけ使うので、あらかじめ表にしておいて引く
+ */
+import java.util.SplittableRandom;
+
+public class SoftmaxExploration implements ExplorationStrategy {
+
+	/**
+	 * ソフトマックス法で行動を選択するオブジェクトを生成する
+	 * 
+	 * @param actions        行動数（使うＱテーブルの行動数と同じにする）
+	 * @param temperature    最初の試行の温度
+	 * @param minTemperature 温度の下限
+	 * @param decay          試行ごとに温度に掛ける値（0.0〜1.0）
+	 * @param seed           乱数の種
+	 */
+	public SoftmaxExploration(int actions, double temperature, double minTemperature, double decay, long seed) {
+		this.temperature = temperature;
+		this.minTemperature = minTemperature;
+		this.decay = decay;
+		this.rand = new SplittableRandom(seed);
+		this.weights = new double[actions];
+	}
+
+	public int selectAction(QTable q, long state) {
+		int actions = q.getActions();
+		//重みの配列は生成したときの行動数の大きさなので、違う表には使えない
+		if (actions != weights.length)
+			throw new IllegalArgumentException("Q-table has " + actions + " actions, expected " + weights.length);
+		double max = q.getMaxValue(state);
+		double scale = EXP_STEPS / temperature;
+
+		//各行動の重み exp((Q - 最大値)/T) を表から引いて合計する
+		double sum = 0;
+		for (int a = 0; a < actions; a++) {
+			double x = (max - q.getQTable(state, a)) * scale;
+			weights[a] = (x < EXP_TABLE.length - 1) ? EXP_TABLE[(int) (x + 0.5)] : 0;
+			sum += weights[a];
+		}
+
+		//重みに比例する確率で選ぶ（最大値の行動の重みは 1 なので sum は 1 以上）
+		double r = rand.nextDouble() * sum;
+		for (int a = 0; a < actions; a++) {
+			r -= weights[a];
+			if (r < 0)
+				return a;
+		}
+		return q.selectAction(state);
+	}
+
+	public void endEpisode() {
+		temperature = Math.max(minTemperature, temperature * decay);
+	}
+
+	//今の温度を返す
+	public double getTemperature() {
+		return temperature;
+	}
+
+	// 定数
+	//exp(-x) の表：x を 1/EXP_STEPS 刻みで 0〜EXP_RANGE まで（それより先は 0 とみなす）
+	private static final int EXP_STEPS = 64;
+	private static final int EXP_RANGE = 20;
+	private static final double EXP_TABLE[] = new double[EXP_RANGE * EXP_STEPS + 1];
+	static {
+		for (int i = 0; i < EXP_TABLE.length; i++)
+			EXP_TABLE[i] = Math.exp(-(double) i / EXP_STEPS);
+	}
+
+	// フィールド
+	private double temperature = 1;
+	private double minTemperature = 1;
+	private double decay = 1;
+	private SplittableRandom rand = null;
+	//作業用：行動ごとの重み
+	private double weights[] = null;
+}
@@ -0,0 +1,287 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * MyRobot の学習の設定（学習率・割引率・epsilon・試行回数・ステップ数）の組み合わせを
+ * 画面を使わずに並列に試し，設定ごとの走行結果と学習時間を表にするクラス．
+ * 全ての設定で同じ乱数の種を使うので，結果の差は設定の差だけによる
+ */
+public class SweepRunner
+{
+  /**
+   * 設定を比較するオブジェクトを生成する
+   * @param lineMap  色判定済みのマップ（全ての実行で共有）
+   * @param threads  同時に実行するスレッド数
+   * @param maxSteps 学習後の走行のステップ数の上限（0 以下の場合は上限なし）
+   */
+  public SweepRunner(LineMap lineMap, int threads, long maxSteps)
+  {
+    this.lineMap  = lineMap;
+    this.threads  = threads;
+    this.maxSteps = maxSteps;
+  }
+
+  /**
+   * 試す設定を追加する
+   * @param alpha   学習率
+   * @param gamma   割引率
+   * @param epsilon Ｑ値が最大の行動を選択する確率
+   * @param trials  試行回数
+   * @param steps   １試行あたりの最大ステップ数
+   */
+  public void add(double alpha, double gamma, double epsilon, int trials, int steps)
+  {
+    configs.add(new double[] { alpha, gamma, epsilon, trials, steps });
+  }
+
+  /**
+   * 値の並びを組み合わせた全ての設定を追加する
+   * @param alphas   学習率の並び
+   * @param gammas   割引率の並び
+   * @param epsilons epsilon の並び
+   * @param trials   試行回数の並び
+   * @param steps    １試行あたりの最大ステップ数の並び
+   */
+  public void addGrid(double[] alphas, double[] gammas, double[] epsilons, double[] trials, double[] steps)
+  {
+    for (double a : alphas)
+      for (double g : gammas)
+        for (double e : epsilons)
+          for (double t : trials)
+            for (double s : steps)
+              add(a, g, e, (int)t, (int)s);
+  }
+
+  /**
+   * 全体の乱数の種を設定する．各繰り返しの種はこの種から導き，全ての設定で共通にする
+   * @param seed 全体の乱数の種
+   */
+  public void setSeed(long seed)
+  {
+    this.seed = seed;
+  }
+
+  /**
+   * 設定ごとに異なる乱数の種で何回実行するかを設定する
+   * @param repeats 繰り返し回数
+   */
+  public void setRepeats(int repeats)
+  {
+    this.repeats = repeats;
+  }
+
+  /**
+   * 追加した全ての設定を並列に実行する
+   * @return 追加した順（同じ設定の中では繰り返しの順）の実行結果
+   */
+  public List<Result> runAll() throws InterruptedException, ExecutionException
+  {
+    // 繰り返しごとの種（全ての設定で共通）
+    SplittableRandom seeds = new SplittableRandom(seed);
+    long[] repeatSeeds = new long[repeats];
+    for (int r = 0; r < repeats; r++)
+      repeatSeeds[r] = seeds.split().nextLong();
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Result>> futures = new ArrayList<Future<Result>>();
+      for (double[] config : configs)
+        for (long s : repeatSeeds)
+          futures.add(pool.submit(new Job(config, s)));
+
+      List<Result> results = new ArrayList<Result>();
+      for (Future<Result> future : futures)
+        results.add(future.get());
+      return results;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * 値の並びを解釈する．"0.1,0.5,0.9" のようにカンマで区切るか，"0.1:0.9:0.2" のように
+   * 開始:終了:刻み で指定する（終了の値を含む）
+   * @param spec 値の並びの指定
+   * @return 値の配列
+   */
+  public static double[] parseValues(String spec)
+  {
+    if (spec.indexOf(':') >= 0) {
+      String[] f = spec.split(":");
+      double from = Double.parseDouble(f[0]);
+      double to   = Double.parseDouble(f[1]);
+      double step = (f.length > 2) ? Double.parseDouble(f[2]) : 1.0;
+      int    n    = (int)Math.floor((to - from) / step + 1e-9) + 1;
+      double[] values = new double[Math.max(n, 0)];
+      for (int i = 0; i < values.length; i++)
+        values[i] = Math.round((from + i * step) * 1e9) / 1e9; // 刻みの誤差を丸める
+      return values;
+    }
+
+    String[] f = spec.split(",");
+    double[] values = new double[f.length];
+    for (int i = 0; i < f.length; i++)
+      values[i] = Double.parseDouble(f[i]);
+    return values;
+  }
+
+  /**
+   * 設定１つ・乱数の種１つ分の実行を表す内部クラス
+   */
+  class Job implements Callable<Result>
+  {
+    /**
+     * 実行を生成する
+     * @param config 設定（学習率，割引率，epsilon，試行回数，ステップ数）
+     * @param seed   乱数の種
+     */
+    Job(double[] config, long seed)
+    {
+      this.config = config;
+      this.seed   = seed;
+    }
+
+    /**
+     * 学習と走行を実行する
+     * @return 実行結果
+     */
+    public Result call() throws Exception
+    {
+      MyRobot robot = new MyRobot();
+      robot.setParameters(config[0], config[1], config[2], (int)config[3], (int)config[4]);
+
+      HeadlessSimulator sim = new HeadlessSimulator(robot, lineMap);
+      sim.getWorld().setSeed(seed);
+      sim.setMaxSteps(maxSteps);
+      boolean finished = sim.run();
+
+      // ステップ数の上限に達した場合はゴールしていない
+      World world = sim.getWorld();
+      return new Result(config[0], config[1], config[2], (int)config[3], (int)config[4], seed,
+                        finished, world.getRobotRun(), world.getRobotMiss(),
+                        finished ? sim.getSteps() : -1, robot.getLearningTime());
+    }
+
+    /** 設定 */
+    private double[] config;
+    /** 乱数の種 */
+    private long seed;
+  }
+
+  /**
+   * 実行１回分の結果を表すクラス
+   */
+  public static class Result
+  {
+    /**
+     * 実行結果を生成する
+     */
+    Result(double alpha, double gamma, double epsilon, int trials, int steps, long seed,
+           boolean finished, double run, double miss, long goalSteps, long learningNanos)
+    {
+      this.alpha         = alpha;
+      this.gamma         = gamma;
+      this.epsilon       = epsilon;
+      this.trials        = trials;
+      this.steps         = steps;
+      this.seed          = seed;
+      this.finished      = finished;
+      this.run           = run;
+      this.miss          = miss;
+      this.goalSteps     = goalSteps;
+      this.learningNanos = learningNanos;
+    }
+
+    /** 学習率 */
+    public final double alpha;
+    /** 割引率 */
+    public final double gamma;
+    /** Ｑ値が最大の行動を選択する確率 */
+    public final double epsilon;
+    /** 試行回数 */
+    public final int trials;
+    /** １試行あたりの最大ステップ数 */
+    public final int steps;
+    /** 乱数の種 */
+    public final long seed;
+    /** ゴールに到達したかどうか */
+    public final boolean finished;
+    /** 学習後の走行距離 (cm) */
+    public final double run;
+    /** 学習後のミスをした走行距離 (cm) */
+    public final double miss;
+    /** ゴールまでのステップ数（到達しなかった場合は -1） */
+    public final long goalSteps;
+    /** 学習時間 (nsec) */
+    public final long learningNanos;
+  }
+
+  /**
+   * 起動用 main 関数．各値の並びはカンマ区切りか 開始:終了:刻み で指定する．
+   * 結果は TSV で出力し，OUTFILE を指定した場合はファイルにも書き出す．
+   * 全体の乱数の種はシステムプロパティ linetracer.seed で指定できる
+   * @param args コマンドライン引数の配列
+   */
+  public static void main(String[] args) throws Exception
+  {
+    // コマンドライン引数のチェック
+    if (args.length < 7) {
+      System.out.println("Usage: java SweepRunner MAPFILE MAXSTEPS ALPHAS GAMMAS EPSILONS TRIALS STEPS"
+                         + " [REPEATS [OUTFILE]]");
+      System.out.println("  e.g. java SweepRunner map1-rect.png 20000 0.1:0.9:0.2 0.5,0.9 0.5 20,50,100 1000 3");
+      System.exit(-1);
+    }
+
+    // 画面を使わない
+    System.setProperty("java.awt.headless", "true");
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    SweepRunner runner = new SweepRunner(LineMap.load(args[0]), threads, Long.parseLong(args[1]));
+    runner.addGrid(parseValues(args[2]), parseValues(args[3]), parseValues(args[4]),
+                   parseValues(args[5]), parseValues(args[6]));
+    if (args.length > 7)
+      runner.setRepeats(Integer.parseInt(args[7]));
+
+    // ロボットのプログラムの出力は捨てる
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    long t0 = System.nanoTime();
+    List<Result> results;
+    try {
+      results = runner.runAll();
+    } finally {
+      System.setOut(out);
+    }
+    long t1 = System.nanoTime();
+
+    // 結果の表
+    StringBuilder table = new StringBuilder();
+    table.append("alpha\tgamma\tepsilon\ttrials\tsteps\tseed\tfinished\trun(cm)\tmiss(cm)\tgoal steps\tlearning(ms)\n");
+    for (Result r : results) {
+      table.append(r.alpha + "\t" + r.gamma + "\t" + r.epsilon + "\t" + r.trials + "\t" + r.steps + "\t"
+                   + r.seed + "\t" + r.finished + "\t" + (int)(r.run * 10) / 10.0 + "\t"
+                   + (int)(r.miss * 10) / 10.0 + "\t" + r.goalSteps + "\t" + r.learningNanos / 1000000 + "\n");
+    }
+    System.out.print(table);
+    if (args.length > 8) {
+      try (Writer w = new FileWriter(args[8])) {
+        w.write(table.toString());
+      }
+    }
+    System.out.println("Runs: " + results.size() + ", threads: " + threads + ", wall: " + (t1 - t0) / 1000000 + "ms");
+  }
+
+  /** 色判定済みのマップ */
+  private LineMap lineMap = null;
+  /** 同時に実行するスレッド数 */
+  private int threads = 1;
+  /** 学習後の走行のステップ数の上限 */
+  private long maxSteps = 0;
+  /** 全体の乱数の種 */
+  private long seed = Long.getLong("linetracer.seed", new SplittableRandom().nextLong());
+  /** 設定ごとの繰り返し回数 */
+  private int repeats = 1;
+  /** 試す設定の一覧（学習率，割引率，epsilon，試行回数，ステップ数） */
+  private List<double[]> configs = new ArrayList<double[]>();
+}
@@ -0,0 +1,215 @@
+
+/**
+ * タイルコーディングによる線形関数近似でＱ値を学習するクラス
+ * 
+ * 状態を番号ではなく連続値（光センサの明るさなど）の組で受け取る。入力の空間を
+ * 少しずつずらした格子（タイリング）で何枚も区切り、入力が入るタイルを特徴とする。
+ * Ｑ値は入力が入ったタイルの重みの和なので、近い入力どうしで学習結果が共有され、
+ * 状態を数え上げなくても、学習していない姿勢にも方策が当てはまる
+ * 
+ * 格子のずらし幅は生成時に計算しておき、特徴（入ったタイルの番号）は int 配列に
+ * 書き込むので、行動選択・更新でオブジェクトを生成しない
+ */
+import java.util.SplittableRandom;
+
+public class TileCodingLearning {
+
+	/**
+	 * タイルコーディングで学習するオブジェクトを生成する
+	 * 
+	 * @param inputs  入力の数（各入力は 0.0〜1.0）
+	 * @param tiles   タイリング１枚で１つの入力を区切る数
+	 * @param tilings タイリングの枚数
+	 * @param actions 行動数
+	 * @param alpha   学習率（0.0〜1.0。タイリングの枚数で割って使う）
+	 * @param gamma   割引率（0.0〜1.0）
+	 * @param seed    乱数の種
+	 */
+	public TileCodingLearning(int inputs, int tiles, int tilings, int actions, double alpha, double gamma,
+			long seed) {
+		this.inputs = inputs;
+		this.tiles = tiles;
+		this.tilings = tilings;
+		this.actions = actions;
+		this.alpha = alpha / tilings;
+		this.gamma = gamma;
+		this.rand = new SplittableRandom(seed);
+
+		//ずらした分だけはみ出すので、各入力は tiles+1 個のタイルで覆う
+		int perTiling = 1;
+		for (int d = 0; d < inputs; d++)
+			perTiling *= tiles + 1;
+		this.tilesPerTiling = perTiling;
+
+		//タイリング t の入力 d のずらし幅（タイルの幅を単位として、非対称に 1, 3, 5, ... 倍ずつずらす）
+		this.offsets = new double[tilings * inputs];
+		for (int t = 0; t < tilings; t++)
+			for (int d = 0; d < inputs; d++)
+				offsets[t * inputs + d] = ((double) t * (2 * d + 1) / tilings) % 1.0;
+
+		//重みは特徴ごとに行動の順に並べる（特徴１つ分の行動の重みが連続する）
+		this.weights = new double[tilings * perTiling * actions];
+		this.features = new int[tilings];
+		this.afterFeatures = new int[tilings];
+		this.values = new double[actions];
+	}
+
+	/**
+	 * 入力が入るタイルの番号（特徴）を求める
+	 * 
+	 * @param x      入力（0.0〜1.0。範囲外は端のタイルに入れる）
+	 * @param active 特徴を書き込む配列（タイリングの枚数の長さ）
+	 */
+	public void features(double[] x, int[] active) {
+		for (int t = 0; t < tilings; t++) {
+			int index = 0;
+			for (int d = 0; d < inputs; d++) {
+				int c = (int) (x[d] * tiles + offsets[t * inputs + d]);
+				if (c < 0)
+					c = 0;
+				else if (c > tiles)
+					c = tiles;
+				index = index * (tiles + 1) + c;
+			}
+			active[t] = t * tilesPerTiling + index;
+		}
+	}
+
+	/**
+	 * 特徴から行動ごとのＱ値を求める
+	 * 
+	 * @param active 特徴
+	 * @param q      行動ごとのＱ値を書き込む配列
+	 */
+	private void values(int[] active, double[] q) {
+		for (int a = 0; a < actions; a++)
+			q[a] = 0;
+		for (int t = 0; t < tilings; t++) {
+			int base = active[t] * actions;
+			for (int a = 0; a < actions; a++)
+				q[a] += weights[base + a];
+		}
+	}
+
+	/**
+	 * epsilon-Greedy 法により行動を選択する
+	 * 
+	 * @param x            入力
+	 * @param epsilon      Ｑ値が最大の行動を選択する確率（0.0〜1.0）
+	 * @param actionNumber 行動数
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(double[] x, double epsilon, int actionNumber) {
+		int num = rand.nextInt(100);
+		if (num < 100 * epsilon) {
+			features(x, features);
+			values(features, values);
+			//最大値が複数ある場合はその中からランダムに選ぶ
+			int best = 0;
+			int count = 1;
+			for (int a = 1; a < actions; a++) {
+				if (values[a] > values[best]) {
+					best = a;
+					count = 1;
+				} else if (values[a] == values[best] && rand.nextInt(++count) == 0) {
+					best = a;
+				}
+			}
+			return best;
+		}
+		return rand.nextInt(actionNumber);
+	}
+
+	/**
+	 * Greedy 法により行動を選択する（最大値が複数ある場合は番号が最も小さい行動）
+	 * 
+	 * @param x 入力
+	 * @return 選択された行動番号
+	 */
+	public int selectAction(double[] x) {
+		features(x, features);
+		values(features, values);
+		int best = 0;
+		for (int a = 1; a < actions; a++) {
+			if (values[a] > values[best])
+				best = a;
+		}
+		return best;
+	}
+
+	/**
+	 * Ｑ値（入力が入ったタイルの重み）を更新する
+	 * 
+	 * @param before 入力
+	 * @param action 行動
+	 * @param after  遷移後の入力
+	 * @param reward 報酬
+	 * @return 時間差分誤差
+	 */
+	public double update(double[] before, int action, double[] after, double reward) {
+		//遷移後の最大のＱ値
+		features(after, afterFeatures);
+		values(afterFeatures, values);
+		double next = values[0];
+		for (int a = 1; a < actions; a++)
+			if (values[a] > next)
+				next = values[a];
+
+		//更新前のＱ値
+		features(before, features);
+		double q = 0;
+		for (int t = 0; t < tilings; t++)
+			q += weights[features[t] * actions + action];
+
+		double tdError = reward + gamma * next - q;
+		double step = alpha * tdError;
+		for (int t = 0; t < tilings; t++)
+			weights[features[t] * actions + action] += step;
+		return tdError;
+	}
+
+	/**
+	 * Ｑ値を求める
+	 * 
+	 * @param x      入力
+	 * @param action 行動
+	 * @return Ｑ値
+	 */
+	public double getValue(double[] x, int action) {
+		features(x, features);
+		double q = 0;
+		for (int t = 0; t < tilings; t++)
+			q += weights[features[t] * actions + action];
+		return q;
+	}
+
+	// フィールド
+	private int inputs = 0;
+	private int tiles = 0;
+	private int tilings = 0;
+	private int actions = 0;
+	private double alpha = 0;
+	private double gamma = 0;
+	//タイリング１枚あたりのタイルの数
+	private int tilesPerTiling = 0;
+	//タイリングごと・入力ごとの格子のずらし幅
+	private double offsets[] = null;
+	//タイルごと・行動ごとの重み
+	private double weights[] = null;
+	//作業用：特徴と行動ごとのＱ値
+	private int features[] = null;
+	private int afterFeatures[] = null;
+	private double values[] = null;
+	//行動選択に使う乱数
+	private SplittableRandom rand = null;
+
+	//特徴の総数を返す
+	public int getFeatures() {
+		return tilings * tilesPerTiling;
+	}
+
+	//行動数を返す
+	public int getActions() {
+		return actions;
+	}
+}
@@ -0,0 +1,184 @@
+import java.util.SplittableRandom;
+
+/**
+ * TileCodingLearning で学習し，学習した方策でゴールまでのステップ数を求めるクラス．
+ * 光センサの明るさ（連続値）をそのまま入力にするので，状態番号で学習する QLearning と
+ * 同じ試行回数で学習して結果を比較する
+ */
+public class TileCodingTrainer
+{
+  /**
+   * 学習用のオブジェクトを生成する
+   * @param lineMap 色判定済みのマップ
+   * @param tiles   タイリング１枚で１つの入力を区切る数
+   * @param tilings タイリングの枚数
+   * @param alpha   学習率
+   * @param gamma   割引率
+   * @param epsilon Ｑ値が最大の行動を選択する確率
+   */
+  public TileCodingTrainer(LineMap lineMap, int tiles, int tilings,
+                           double alpha, double gamma, double epsilon)
+  {
+    this.lineMap = lineMap;
+    this.tiles   = tiles;
+    this.tilings = tilings;
+    this.alpha   = alpha;
+    this.gamma   = gamma;
+    this.epsilon = epsilon;
+  }
+
+  /**
+   * 光センサの明るさを入力にして学習する（行動・報酬・試行の終了条件は MyRobot の学習と同じ）
+   * @param trials 試行回数
+   * @param steps  １試行あたりの最大ステップ数
+   * @param seed   乱数の種
+   * @return 学習したＱ値
+   */
+  public TileCodingLearning train(int trials, int steps, long seed)
+  {
+    ActionSet actions = ActionSet.ROTATE;
+    TileCodingLearning q = new TileCodingLearning(INPUTS, tiles, tilings, actions.size(), alpha, gamma, seed);
+    LineTraceEnv env = new LineTraceEnv(new World(lineMap), actions);
+    World world = env.getWorld();
+    Episode episode = env.getEpisode();
+    episode.setMaxLostSteps(MAX_LOST_STEPS);
+    episode.setMaxSteps(steps);
+
+    // 明るさは配列に読み込み，遷移の前後で入れ替えて使う
+    double[] before = new double[INPUTS];
+    double[] after  = new double[INPUTS];
+    for (int t = 0; t < trials; t++) {
+      if (t == 0)
+        env.reset(seed);
+      else
+        env.reset();
+      world.readIntensities(before);
+      for (int s = 0; s < steps; s++) {
+        int action = q.selectAction(before, epsilon, actions.size());
+        LineTraceEnv.Step r = env.step(action);
+        world.readIntensities(after);
+        q.update(before, action, after, r.reward);
+        if (r.done)
+          break;
+        double[] swap = before;
+        before = after;
+        after  = swap;
+      }
+    }
+    return q;
+  }
+
+  /**
+   * 状態番号で学習する（QLearning を使う従来の方法．比較の基準にする）
+   * @param trials 試行回数
+   * @param steps  １試行あたりの最大ステップ数
+   * @param seed   乱数の種
+   * @return 学習したＱ値
+   */
+  public QLearning trainTabular(int trials, int steps, long seed)
+  {
+    ActionSet actions = ActionSet.ROTATE;
+    QLearning q = new QLearning(LineTraceTask.STATES, actions.size(), alpha, gamma, seed);
+    LineTraceEnv env = new LineTraceEnv(new World(lineMap), actions);
+    Episode episode = env.getEpisode();
+    episode.setMaxLostSteps(MAX_LOST_STEPS);
+    episode.setMaxSteps(steps);
+
+    for (int t = 0; t < trials; t++) {
+      int state = (t == 0) ? env.reset(seed) : env.reset();
+      for (int s = 0; s < steps; s++) {
+        int action = q.selectAction(state, epsilon, actions.size());
+        LineTraceEnv.Step r = env.step(action);
+        q.update(state, action, r.observation, r.reward);
+        if (r.done)
+          break;
+        state = r.observation;
+      }
+    }
+    return q;
+  }
+
+  /**
+   * 学習した方策（Greedy）で開始位置からゴールを目指す（MyRobot の走行と同じく，
+   * 行動のあとに 1cm 前進する）
+   * @param q        学習したＱ値
+   * @param maxSteps ステップ数の上限
+   * @return ゴールに着いたステップ数（着かなかった場合は -1）
+   */
+  public int evaluate(TileCodingLearning q, int maxSteps)
+  {
+    World world = new World(lineMap);
+    world.init();
+    double[] x = new double[INPUTS];
+    for (int s = 1; s <= maxSteps; s++) {
+      world.readIntensities(x);
+      ActionSet.ROTATE_FORWARD.apply(world, q.selectAction(x));
+      if (LineTraceTask.isOnGoal(world.readSensors()))
+        return s;
+    }
+    return -1;
+  }
+
+  /**
+   * 起動用 main 関数．MyRobot と同じ設定（alpha=gamma=epsilon=0.5，１試行 1000 ステップ）で
+   * タイルコーディングと状態番号のそれぞれで学習し，学習時間とゴールまでのステップ数を表示する
+   * @param args コマンドライン引数の配列
+   */
+  public static void main(String[] args) throws Exception
+  {
+    // コマンドライン引数のチェック
+    if (args.length < 1) {
+      System.out.println("Usage: java TileCodingTrainer MAPFILE [TRIALS [SEED [TILES [TILINGS]]]]");
+      System.exit(-1);
+    }
+
+    // 画面を使わない
+    System.setProperty("java.awt.headless", "true");
+
+    LineMap lineMap = LineMap.load(args[0]);
+    int     trials  = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+    long    seed    = (args.length > 2) ? Long.parseLong(args[2]) : new SplittableRandom().nextLong();
+    int     tiles   = (args.length > 3) ? Integer.parseInt(args[3]) : 4;
+    int     tilings = (args.length > 4) ? Integer.parseInt(args[4]) : 8;
+    TileCodingTrainer trainer = new TileCodingTrainer(lineMap, tiles, tilings, 0.5, 0.5, 0.5);
+
+    long t0 = System.nanoTime();
+    TileCodingLearning tileCoding = trainer.train(trials, STEPS_PER_EPISODE, seed);
+    long t1 = System.nanoTime();
+    QLearning tabular = trainer.trainTabular(trials, STEPS_PER_EPISODE, seed);
+    long t2 = System.nanoTime();
+
+    // 学習した方策でゴールを目指す
+    int tileGoal    = trainer.evaluate(tileCoding, EVALUATION_STEPS);
+    int tabularGoal = LineTraceTask.evaluate(new World(lineMap), tabular, EVALUATION_STEPS);
+
+    System.out.println("Trials: " + trials + ", seed: " + seed);
+    System.out.println(" Tile coding (" + tiles + " tiles x " + tilings + " tilings, "
+                       + tileCoding.getFeatures() + " features): "
+                       + (t1 - t0) / 1000000 + "ms, steps to goal: " + tileGoal);
+    System.out.println(" Tabular (" + LineTraceTask.STATES + " states): "
+                       + (t2 - t1) / 1000000 + "ms, steps to goal: " + tabularGoal);
+  }
+
+  /** 入力の数（光センサ A, B, C の明るさ） */
+  private final static int INPUTS = 3;
+  /** １試行あたりのステップ数 */
+  private final static int STEPS_PER_EPISODE = 1000;
+  /** ラインを見失ったまま何ステップ続いたら試行を打ち切るか（MyRobot と同じ） */
+  private final static int MAX_LOST_STEPS = 50;
+  /** 学習後の評価で使うステップ数の上限 */
+  private final static int EVALUATION_STEPS = 10000;
+
+  /** 色判定済みのマップ */
+  private final LineMap lineMap;
+  /** タイリング１枚で１つの入力を区切る数 */
+  private final int tiles;
+  /** タイリングの枚数 */
+  private final int tilings;
+  /** 学習率 */
+  private final double alpha;
+  /** 割引率 */
+  private final double gamma;
+  /** Ｑ値が最大の行動を選択する確率 */
+  private final double epsilon;
+}
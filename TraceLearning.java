@@ -0,0 +1,116 @@
+
+/**
+ * 適格度トレースを使ってＱ値を更新するクラス（Q(λ) または SARSA(λ)）
+ * 
+ * 報酬を直前の状態・行動だけでなく、最近たどった状態・行動にもさかのぼって配るので、
+ * ゴールの報酬が少ない試行回数で開始位置の近くまで伝わる。トレースが残っている
+ * 状態・行動だけを一覧に持って更新するので、１ステップの計算量はＱテーブルの大きさではなく
+ * 最近たどった数で決まる（トレースは１ステップごとに gamma*lambda 倍され、十分小さくなると捨てる）
+ * 
+ * 行動選択や学習済みのＱテーブルの扱いは QLearning と同じ。次の状態で選んだ行動を
+ * 渡す update(before, action, after, nextAction, reward) を使い、試行の始めに
+ * clearTraces() を呼ぶ
+ */
+public class TraceLearning extends QLearning {
+
+	/**
+	 * 適格度トレースを使ってＱ値を更新するオブジェクトを生成する
+	 * 
+	 * @param states  状態数
+	 * @param actions 行動数
+	 * @param alpha   学習率（0.0〜1.0）
+	 * @param gamma   割引率（0.0〜1.0）
+	 * @param lambda  トレースの減衰率（0.0〜1.0。0.0 なら１ステップのＱ学習・SARSA と同じ）
+	 * @param method  Q_LAMBDA または SARSA_LAMBDA
+	 * @param seed    乱数の種
+	 */
+	public TraceLearning(int states, int actions, double alpha, double gamma, double lambda, int method, long seed) {
+		super(states, actions, alpha, gamma, seed);
+		this.lambda = lambda;
+		this.method = method;
+		this.trace = new double[states * actions];
+		this.active = new int[states * actions];
+	}
+
+	/**
+	 * トレースを全て消す（試行の始めに呼ぶ）
+	 */
+	public void clearTraces() {
+		for (int k = 0; k < count; k++)
+			trace[active[k]] = 0;
+		count = 0;
+	}
+
+	/**
+	 * Ｑ値を更新する
+	 * 
+	 * @param before     状態
+	 * @param action     行動
+	 * @param after      遷移後の状態
+	 * @param nextAction 遷移後の状態で選んだ（次に実行する）行動
+	 * @param reward     報酬
+	 * @return 時間差分誤差
+	 */
+	public double update(int before, int action, int after, int nextAction, double reward) {
+		int actions = getActions();
+		//Q(λ) は遷移後の状態の最大値、SARSA(λ) は次に実行する行動の値を目標にする
+		double next = (method == Q_LAMBDA) ? getMaxValue(after) : getQTable(after, nextAction);
+		double tdError = reward + getGamma() * next - getQTable(before, action);
+		//Q(λ) では、次の行動が探索（最大値でない行動）ならトレースをここで切る
+		boolean cut = (method == Q_LAMBDA) && getQTable(after, nextAction) != getMaxValue(after);
+
+		//今の状態・行動のトレースを 1 にし、同じ状態の他の行動のトレースは消す（置換トレース。
+		//消したものはトレースが 0 なので、下の更新で一覧からも外れる）
+		int i = before * actions + action;
+		for (int a = 0; a < actions; a++) {
+			if (a != action)
+				trace[before * actions + a] = 0;
+		}
+		if (trace[i] == 0)
+			active[count++] = i;
+		trace[i] = 1;
+
+		//トレースが残っている状態・行動だけを更新し、トレースを減らす
+		double step = getAlpha() * tdError;
+		double decay = cut ? 0 : getGamma() * lambda;
+		int n = 0;
+		for (int k = 0; k < count; k++) {
+			int j = active[k];
+			int s = j / actions;
+			int a = j - s * actions;
+			store(s, a, getQTable(s, a) + step * trace[j]);
+			trace[j] *= decay;
+			if (trace[j] >= CUTOFF)
+				active[n++] = j;
+			else
+				trace[j] = 0;
+		}
+		count = n;
+		return tdError;
+	}
+
+	//トレースが残っている状態・行動の数を返す
+	public int getActiveTraces() {
+		return count;
+	}
+
+	//トレースの減衰率を返す
+	public double getLambda() {
+		return lambda;
+	}
+
+	// 定数
+	public static final int Q_LAMBDA = 0; // Watkins の Q(λ)
+	public static final int SARSA_LAMBDA = 1; // SARSA(λ)
+	//これより小さいトレースは捨てる
+	private static final double CUTOFF = 1e-4;
+
+	// フィールド
+	private double lambda = 0;
+	private int method = Q_LAMBDA;
+	//状態×行動ごとのトレース（QLearning のＱテーブルと同じ並び）
+	private double trace[] = null;
+	//トレースが残っている状態・行動の添字の一覧と、その数
+	private int active[] = null;
+	private int count = 0;
+}
@@ -0,0 +1,68 @@
+
+/**
+ * UCB（Upper Confidence Bound）法で行動を選択するクラス
+ * 
+ * 状態ごとに各行動を選んだ回数を数え、Q(s,a) + c * sqrt(ln N(s) / N(s,a)) が最大の行動を選ぶ
+ * （N(s) はその状態で選んだ回数の合計）。あまり選んでいない行動ほど優先されるので、
+ * 乱数を使わずに探索し、回数が増えるにつれて自然に Greedy に近づく。
+ * 一度も選んでいない行動があればそれを先に選ぶ。回数は状態ごとの配列に持つので、状態の番号は
+ * 0〜状態数-1 の範囲に限る（HashedQTable の大きな番号には使えない）
+ */
+public class UcbExploration implements ExplorationStrategy {
+
+	/**
+	 * UCB 法で行動を選択するオブジェクトを生成する
+	 * 
+	 * @param states  状態数
+	 * @param actions 行動数
+	 * @param c       探索の強さ（Ｑ値の大きさに合わせる）
+	 */
+	public UcbExploration(int states, int actions, double c) {
+		this.c = c;
+		this.actions = actions;
+		this.counts = new int[states * actions];
+		this.totals = new int[states];
+	}
+
+	public int selectAction(QTable q, long code) {
+		if (code < 0 || code >= totals.length)
+			throw new IllegalArgumentException("state out of range: " + code);
+		int state = (int) code;
+		int base = state * actions;
+		int best = -1;
+		double bestScore = 0;
+		double logTotal = Math.log(totals[state]);
+		for (int a = 0; a < actions; a++) {
+			int n = counts[base + a];
+			if (n == 0) {
+				//一度も選んでいない行動
+				best = a;
+				break;
+			}
+			double score = q.getQTable(state, a) + c * Math.sqrt(logTotal / n);
+			if (best < 0 || score > bestScore) {
+				best = a;
+				bestScore = score;
+			}
+		}
+		counts[base + best]++;
+		totals[state]++;
+		return best;
+	}
+
+	public void endEpisode() {
+		//回数は試行をまたいで数え続ける
+	}
+
+	//状態で行動を選んだ回数を返す
+	public int getCount(int state, int action) {
+		return counts[state * actions + action];
+	}
+
+	// フィールド
+	private double c = 0;
+	private int actions = 0;
+	//状態×行動ごとの選んだ回数と、状態ごとの合計
+	private int counts[] = null;
+	private int totals[] = null;
+}
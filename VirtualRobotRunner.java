@@ -0,0 +1,271 @@
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 多数のロボットのプログラムを同時に実行するクラス．ロボットごとに独立した仮想環境を持ち，
+ * delay() は全ロボット共通のシミュレーション時計の次の時刻まで待つだけになる．
+ * 仮想スレッドが使える JVM (Java 21 以降) では各プログラムを仮想スレッドで実行し，
+ * 使えない場合はスタックを小さくした通常のスレッドで実行する
+ */
+public class VirtualRobotRunner
+{
+  /**
+   * 同時実行用のオブジェクトを生成する
+   * @param className 動作プログラム名(クラス名)
+   * @param lineMap   色判定済みのマップ（全ロボットで共有）
+   * @param count     同時に実行するロボットの数
+   * @param maxSteps  ロボット１台あたりのステップ数の上限（0 以下の場合は上限なし）
+   */
+  public VirtualRobotRunner(String className, LineMap lineMap, int count, long maxSteps)
+  {
+    this.className = className;
+    this.lineMap   = lineMap;
+    this.count     = count;
+    this.maxSteps  = maxSteps;
+  }
+
+  /**
+   * 全てのロボットのプログラムを同時に実行し，全て終了するまで待つ
+   * @return 各ロボットの仮想環境（ロボットの番号順）
+   */
+  public World[] runAll() throws Exception
+  {
+    // 時計に参加するロボットが多いので，GROUP_SIZE 台ごとに子の時計にまとめる
+    Phaser clock = new Phaser(1);
+    Phaser group = null;
+
+    // 各ロボットの乱数の種は全体の種から番号順に導く
+    SplittableRandom seeds = new SplittableRandom(seed);
+
+    World[]  worlds  = new World[count];
+    Thread[] threads = new Thread[count];
+    for (int i = 0; i < count; i++) {
+      if (i % GROUP_SIZE == 0)
+        group = new Phaser(clock);
+      ClockedEngine engine = new ClockedEngine(HeadlessSimulator.createRobot(className), group);
+      worlds[i]  = engine.getWorld();
+      worlds[i].setSeed(seeds.split().nextLong());
+      threads[i] = newThread(engine, "robot-" + i);
+    }
+
+    for (Thread thread : threads)
+      thread.start();
+
+    // 時計を進めるのは参加しているロボットなので，親は参加を取り消すだけ
+    clock.arriveAndDeregister();
+    for (Thread thread : threads)
+      thread.join();
+
+    // 全員が抜けると時計は終了し，時刻は負の値になるので符号ビットを落とす
+    ticks = clock.getPhase() & Integer.MAX_VALUE;
+    return worlds;
+  }
+
+  /**
+   * 全体の乱数の種を設定する
+   * @param seed 全体の乱数の種
+   */
+  public void setSeed(long seed)
+  {
+    this.seed = seed;
+  }
+
+  /**
+   * 最後に実行したときのシミュレーション時計の時刻を取得する
+   * @return 時刻（全ロボットが delay() を呼んだ回数）
+   */
+  public int getTicks()
+  {
+    return ticks;
+  }
+
+  /**
+   * 仮想スレッドが使えるかどうか判定する
+   * @return 仮想スレッドが使える場合は true を返す
+   */
+  public static boolean isVirtualThreadAvailable()
+  {
+    return ofVirtual != null;
+  }
+
+  /**
+   * ロボットのプログラムを実行するスレッドを生成する
+   * @param task 実行する処理
+   * @param name スレッドの名前
+   * @return 開始前のスレッド
+   */
+  private static Thread newThread(Runnable task, String name) throws Exception
+  {
+    // 仮想スレッドが使える場合は Thread.ofVirtual().name(name).unstarted(task)
+    if (ofVirtual != null) {
+      Object builder = builderName.invoke(ofVirtual.invoke(null), name);
+      return (Thread)builderUnstarted.invoke(builder, task);
+    }
+
+    // 使えない場合は通常のスレッド
+    Thread thread = new Thread(null, task, name, PLATFORM_STACK_SIZE);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /**
+   * シミュレーション時計に合わせて動く実行環境を表す内部クラス
+   */
+  class ClockedEngine implements SimulationEngine, Runnable
+  {
+    /**
+     * 実行環境を生成する
+     * @param robot ロボットオブジェクト
+     * @param clock シミュレーション時計
+     */
+    ClockedEngine(Robot robot, Phaser clock)
+    {
+      this.robot = robot;
+      this.clock = clock;
+      world = new World(lineMap);
+      robot.setEngine(this);
+      // 時計に参加する
+      clock.register();
+    }
+
+    /**
+     * ロボットのプログラムを実行する
+     */
+    public void run()
+    {
+      try {
+        world.init();
+        robot.run();
+      } catch (RobotStopped e) {
+        // ステップ数の上限に達した
+      } catch (InterruptedException e) {
+        // 何もしない
+      } finally {
+        // 終了したロボットは時計から抜ける
+        clock.arriveAndDeregister();
+      }
+    }
+
+    /**
+     * 他のロボットが追いつくまで待ち，時計を１つ進める
+     */
+    public void delay() throws InterruptedException
+    {
+      // 上限を超えた場合はプログラムを中断する
+      if (maxSteps > 0 && ++steps > maxSteps)
+        throw new RobotStopped("step limit " + maxSteps);
+      clock.arriveAndAwaitAdvance();
+    }
+
+    /**
+     * 仮想環境を取得する
+     * @return 仮想環境
+     */
+    public World getWorld()
+    {
+      return world;
+    }
+
+    /**
+     * 画面を持たない環境かどうか判定する
+     * @return 画面を持たないので true を返す
+     */
+    public boolean isHeadless()
+    {
+      return true;
+    }
+
+    /** ロボットオブジェクトへの参照 */
+    private Robot robot;
+    /** 仮想環境 */
+    private World world;
+    /** シミュレーション時計 */
+    private Phaser clock;
+    /** 実行したステップ数 */
+    private long steps = 0;
+  }
+
+  /**
+   * 起動用 main 関数．全体の乱数の種はシステムプロパティ linetracer.seed で指定できる
+   * @param args コマンドライン引数の配列
+   */
+  public static void main(String[] args) throws Exception
+  {
+    // コマンドライン引数のチェック
+    if (args.length < 4) {
+      System.out.println("Usage: java VirtualRobotRunner ROBOT_CLASSNAME MAPFILE COUNT MAXSTEPS");
+      System.exit(-1);
+    }
+
+    // 画面を使わない
+    System.setProperty("java.awt.headless", "true");
+
+    VirtualRobotRunner runner = new VirtualRobotRunner(args[0], LineMap.load(args[1]),
+                                                       Integer.parseInt(args[2]), Long.parseLong(args[3]));
+
+    // ロボットのプログラムの出力は捨てる
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    long t0 = System.nanoTime();
+    World[] worlds;
+    try {
+      worlds = runner.runAll();
+    } finally {
+      System.setOut(out);
+    }
+    long t1 = System.nanoTime();
+
+    // 結果の表示
+    double run = 0.0, miss = 0.0;
+    for (World world : worlds) {
+      run  += world.getRobotRun();
+      miss += world.getRobotMiss();
+    }
+    System.out.println("Threads: " + (isVirtualThreadAvailable() ? "virtual" : "platform"));
+    System.out.println(" Robots: " + worlds.length);
+    System.out.println(" Ticks: " + runner.getTicks());
+    System.out.println(" Mean run: " + (int)(run / worlds.length * 10) / 10.0 + "cm");
+    System.out.println(" Mean miss: " + (int)(miss / worlds.length * 10) / 10.0 + "cm");
+    System.out.println(" Time: " + (t1 - t0) / 1000000 + "ms");
+  }
+
+  /** 子の時計１つにまとめるロボットの数 */
+  private final static int GROUP_SIZE = 256;
+  /** 通常のスレッドを使う場合のスタックサイズ */
+  private final static long PLATFORM_STACK_SIZE = 256 * 1024;
+
+  /** Thread.ofVirtual() （使えない場合は null） */
+  private static Method ofVirtual = null;
+  /** Thread.Builder.name(String) */
+  private static Method builderName = null;
+  /** Thread.Builder.unstarted(Runnable) */
+  private static Method builderUnstarted = null;
+
+  static {
+    try {
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      builderName      = builder.getMethod("name", String.class);
+      builderUnstarted = builder.getMethod("unstarted", Runnable.class);
+      ofVirtual        = Thread.class.getMethod("ofVirtual");
+      // プレビュー機能として無効になっている場合もあるので，一度試す
+      ofVirtual.invoke(null);
+    } catch (Exception e) {
+      ofVirtual = null;
+    }
+  }
+
+  /** 動作プログラム名(クラス名) */
+  private String className = null;
+  /** 色判定済みのマップ */
+  private LineMap lineMap = null;
+  /** 同時に実行するロボットの数 */
+  private int count = 0;
+  /** ロボット１台あたりのステップ数の上限 */
+  private long maxSteps = 0;
+  /** 全体の乱数の種 */
+  private long seed = Long.getLong("linetracer.seed", new SplittableRandom().nextLong());
+  /** 最後に実行したときのシミュレーション時計の時刻 */
+  private int ticks = 0;
+}
@@ -0,0 +1,564 @@
+/**
+ * ロボットが走行する仮想環境（マップとロボットの姿勢）を表すクラス．
+ * 画面描画やスレッドには依存しないので，Model からも画面を持たない
+ * HeadlessSimulator からも使うことができる
+ */
+public class World
+{
+  /**
+   * 仮想環境を生成する
+   * @param lineMap 色判定済みのマップ（複数の仮想環境で共有してよい）
+   */
+  public World(LineMap lineMap)
+  {
+    // マップを保存
+    this.lineMap = lineMap;
+    // マップに応じた開始位置
+    setStartPose(lineMap.getStartX(), lineMap.getStartY(), lineMap.getStartDir());
+    // 試行の終了条件
+    episode = new Episode(this);
+    // ロボットの初期化
+    init();
+  }
+
+  /**
+   * 実行前の初期化用関数
+   */
+  public void init()
+  {
+    // 開始位置に置く
+    robotX   = startX;
+    robotY   = startY;
+    robotDir = startDir;
+
+    // ロボットの移動距離のリセット
+    robotRun = robotMiss = 0.0;
+
+    // 姿勢が変わったことを記録
+    poseChanged();
+
+    // 新しい試行を始める
+    episode.reset();
+  }
+
+  /**
+   * init() で置かれるロボットの開始位置を変更する
+   * @param x   開始Ｘ座標
+   * @param y   開始Ｙ座標
+   * @param dir 開始時の向き（度）
+   */
+  public void setStartPose(double x, double y, double dir)
+  {
+    startX   = x;
+    startY   = y;
+    startDir = dir;
+  }
+
+  /**
+   * 乱数の種を設定する．ロボットのプログラムはこの種から乱数を作ることで，
+   * 同じ種であれば同じ結果を再現できる
+   * @param seed 乱数の種
+   */
+  public void setSeed(long seed)
+  {
+    this.seed = seed;
+  }
+
+  /**
+   * 乱数の種を取得する
+   * @return 乱数の種
+   */
+  public long getSeed()
+  {
+    return seed;
+  }
+
+  /**
+   * ロボットの向きを設定する
+   * @param angle ロボットの向き（度）
+   */
+  public void setRobotDir(double angle)
+  {
+    robotDir = angle;
+    poseChanged();
+  }
+  
+  /**
+   * ロボットを指定座標に移動させる
+   * @param x ロボットの新しいＸ座標
+   * @param y ロボットの新しいＹ座標
+   */
+  public void moveRobot(double x, double y)
+  {
+    robotX = x;
+    robotY = y;
+    poseChanged();
+  }
+  
+  /**
+   * 色判定済みのマップを取得する
+   * @return 色判定済みのマップ
+   */
+  public LineMap getLineMap()
+  {
+    return lineMap;
+  }
+
+  /**
+   * 試行（エピソード）の終了条件を取得する
+   * @return 試行の終了条件
+   */
+  public Episode getEpisode()
+  {
+    return episode;
+  }
+
+  /**
+   * ロボットの X 座標を取得する
+   * @return ロボットの X 座標
+   */
+  public double getRobotX()
+  {
+    return robotX;
+  }
+  
+  /**
+   * ロボットの Y 座標を取得する
+   * @return ロボットの Y 座標
+   */
+  public double getRobotY()
+  {
+    return robotY;
+  }
+  
+  /**
+   * ロボットの向きを取得する
+   * @return ロボットの向き（１２時方向が 0 度）
+   */
+  public double getRobotDir()
+  {
+    return robotDir;
+  }
+
+  /**
+   * ロボットの走行距離を取得する
+   * @return ロボットの走行距離(cm)
+   */
+  public double getRobotRun()
+  {
+    return robotRun;
+  }
+  
+  /**
+   * ロボットのミスをした走行距離を取得する
+   * @return ロボットのミスをした走行距離(cm)
+   */
+  public double getRobotMiss()
+  {
+    return robotMiss;
+  }
+  
+  /**
+   * ロボットを指定距離前進させる
+   * @param cm 指定距離(cm)
+   */
+  public void forwardRobot(double cm)
+  {
+    // 向きをラジアンに直す
+    double rad = Math.toRadians(robotDir);
+
+    // 仮想環境上での移動距離
+    double px = cm / cmPerPixel;
+    
+    // X 軸方向の移動量決定
+    double x = Math.sin(rad) * px;
+    // Y 軸方向の移動量決定
+    double y = Math.cos(rad) * px;
+
+    // 距離場を使う場合は，移動する直線上のライン外の長さをまとめて求める．
+    // 1cm 刻みの判定との差は，ラインの境界を一回またぐごとに高々 1cm 程度
+    if (useSweptMiss && useLineField) {
+      double sign = (cm > 0.0) ? +1.0 : -1.0;
+      double off  = lineMap.offLineLength(robotX, robotY, sign * Math.sin(rad), -sign * Math.cos(rad),
+                                          Math.abs(px));
+      robotMiss += sign * off * cmPerPixel;
+
+      // 移動して移動距離を記録
+      robotX += x;
+      robotY -= y;
+      robotRun += cm;
+      poseChanged();
+      return;
+    }
+
+    // 1cm 刻みで移動させてライン上かどうかチェックする
+    double unit = (cm > 0.0) ? +1.0 : -1.0;
+    double curr = 0.0;
+
+    // 実際には，誤差を減らすためいっきに移動させるので元座標を保存
+    double orgX = robotX;  
+    double orgY = robotY;
+
+    while (true) {
+      // 単位距離移動する．もし指定距離を以上ならば指定距離ちょうどにする
+      if (Math.abs(curr + unit) < Math.abs(cm)) {
+        curr += unit;
+      }
+      else {
+        unit = cm - curr;
+        curr = cm;
+      }
+      robotX += Math.sin(rad) * (unit / cmPerPixel);
+      robotY -= Math.cos(rad) * (unit / cmPerPixel);
+
+      if (!isOnLine())
+        robotMiss += unit;
+
+      if (curr == cm)
+        break;
+    }
+    
+    // 移動する
+    robotX = orgX + x;
+    robotY = orgY - y;
+
+    // 移動距離を記録
+    robotRun += cm;
+    poseChanged();
+  }
+  
+  /**
+   * ロボットを回転させる
+   * @param angle 回転角度(度)．時計回転の場合は正の値を，半時計回転の場合は負の値を指定す
+   * る
+   */
+  public void rotateRobot(double angle)
+  {
+    // 回転する
+    robotDir += angle;
+    poseChanged();
+
+    // 移動距離を記録（ロボットの回転半径は 5.5cm）
+    double circum = (2 * Math.PI * 5.5) * (Math.abs(angle) / 360);
+    robotRun += circum;
+
+    // ライン上でなければ，ミスとして記録
+    if (!isOnLine())
+      robotMiss += circum;
+  }
+  
+  /**
+   * ロボットの光センサを使って色を読み取る
+   * @param 光センサ番号
+   * @return 色
+   */
+  public int getColor(int lightNo)
+  {
+    return Robot.sensorColor(readSensors(), lightNo);
+  }
+  
+  /**
+   * ロボットの全ての光センサを使って色を読み取る
+   * @param colors 各光センサの色を格納する配列（光センサ番号の順）
+   */
+  public void readSensors(int[] colors)
+  {
+    int sensors = readSensors();
+    colors[Robot.LIGHT_A] = Robot.sensorColor(sensors, Robot.LIGHT_A);
+    colors[Robot.LIGHT_B] = Robot.sensorColor(sensors, Robot.LIGHT_B);
+    colors[Robot.LIGHT_C] = Robot.sensorColor(sensors, Robot.LIGHT_C);
+  }
+  
+  /**
+   * ロボットの全ての光センサを使って色を読み取る．回転の計算は一度だけ行い，
+   * オブジェクトは生成しない
+   * @return 各光センサの色をまとめた値（Robot.sensorColor で取り出す）
+   */
+  public int readSensors()
+  {
+    // 前回読み取ってから姿勢が変わっていなければ，前回の値をそのまま返す
+    if (useSensorCache && sensorCacheGeneration == poseGeneration) {
+      sensorCacheHits++;
+      return sensorCache;
+    }
+    sensorCacheMisses++;
+
+    // ロボットの中心を基点に回転する変換の係数
+    computeRotation();
+    double sin = rotationSin;
+    double cos = rotationCos;
+
+    // 各センサの位置（ロボット座標系）は (+10,-20), (0,-20), (-10,-20)
+    int a = sensorColor(+10, -20, sin, cos);
+    int b = sensorColor(  0, -20, sin, cos);
+    int c = sensorColor(-10, -20, sin, cos);
+
+    // 読み取った値を現在の姿勢の値として保存
+    sensorCache = (a << (Robot.LIGHT_A * 8)) | (b << (Robot.LIGHT_B * 8)) | (c << (Robot.LIGHT_C * 8));
+    sensorCacheGeneration = poseGeneration;
+    return sensorCache;
+  }
+  
+  /**
+   * ロボットの全ての光センサで明るさを読み取る（LineMap.getIntensity を参照）．
+   * オブジェクトは生成しない
+   * @param intensities 各光センサの明るさ（0.0〜1.0）を格納する配列（光センサ番号の順）
+   */
+  public void readIntensities(double[] intensities)
+  {
+    // 回転の係数と各センサの位置は readSensors() と同じ
+    computeRotation();
+    double sin = rotationSin;
+    double cos = rotationCos;
+
+    intensities[Robot.LIGHT_A] = sensorIntensity(+10, -20, sin, cos);
+    intensities[Robot.LIGHT_B] = sensorIntensity(  0, -20, sin, cos);
+    intensities[Robot.LIGHT_C] = sensorIntensity(-10, -20, sin, cos);
+  }
+
+  /**
+   * ロボットの光センサで明るさを読み取る
+   * @param lightNo 光センサ番号
+   * @return 明るさ（0.0〜1.0）
+   */
+  public double getIntensity(int lightNo)
+  {
+    computeRotation();
+    double sx = (lightNo == Robot.LIGHT_A) ? +10 : (lightNo == Robot.LIGHT_B) ? 0 : -10;
+    return sensorIntensity(sx, -20, rotationSin, rotationCos);
+  }
+
+  /**
+   * ロボットの中心を基点に回転する変換の係数を求め，rotationSin・rotationCos に入れる．
+   * AffineTransform.rotate() と同じく，直角の場合は誤差の無い値を使う
+   * （センサ位置が画素の境界にあるときに，色と明るさで読む画素が変わらないように）
+   */
+  private void computeRotation()
+  {
+    double rad = Math.toRadians(robotDir);
+    double sin = Math.sin(rad);
+    double cos;
+    if (sin == 1.0 || sin == -1.0) {
+      cos = 0.0;
+    }
+    else {
+      cos = Math.cos(rad);
+      if (cos == 1.0 || cos == -1.0)
+        sin = 0.0;
+    }
+    rotationSin = sin;
+    rotationCos = cos;
+  }
+
+  /**
+   * ロボット座標系で指定した位置の明るさを取得する
+   * @param sx  ロボット座標系でのＸ座標
+   * @param sy  ロボット座標系でのＹ座標
+   * @param sin ロボットの向きの正弦
+   * @param cos ロボットの向きの余弦
+   * @return 明るさ（0.0〜1.0）
+   */
+  private double sensorIntensity(double sx, double sy, double sin, double cos)
+  {
+    int x = (int)(sx * cos + sy * -sin + robotX);
+    int y = (int)(sx * sin + sy * cos  + robotY);
+    return lineMap.getIntensity(x, y);
+  }
+  
+  /**
+   * ロボットの姿勢が変わったことを記録する（光センサの値を読み直させるため）
+   */
+  private void poseChanged()
+  {
+    poseGeneration++;
+  }
+  
+  /**
+   * 光センサの値を姿勢ごとに保存して使い回すかどうか指定する
+   * @param flag 使い回す場合は true を指定する
+   */
+  public void setSensorCacheEnabled(boolean flag)
+  {
+    useSensorCache = flag;
+  }
+  
+  /**
+   * 光センサの読み取りで，保存した値を使い回せた回数を取得する
+   * @return 使い回せた回数
+   */
+  public long getSensorCacheHits()
+  {
+    return sensorCacheHits;
+  }
+  
+  /**
+   * 光センサの読み取りで，実際に色を読み取った回数を取得する
+   * @return 実際に読み取った回数
+   */
+  public long getSensorCacheMisses()
+  {
+    return sensorCacheMisses;
+  }
+  
+  /**
+   * ロボット座標系で指定した位置の色を取得する
+   * @param sx  ロボット座標系でのＸ座標
+   * @param sy  ロボット座標系でのＹ座標
+   * @param sin ロボットの向きの正弦
+   * @param cos ロボットの向きの余弦
+   * @return 色
+   */
+  private int sensorColor(double sx, double sy, double sin, double cos)
+  {
+    // 各センサ位置の算出（AffineTransform.transform() と同じ計算順序）
+    int x = (int)(sx * cos + sy * -sin + robotX);
+    int y = (int)(sx * sin + sy * cos  + robotY);
+
+    // 指定位置の色を取得
+    return getColor(x, y);
+  }
+  
+  /**
+   * 指定座標の色を取得する
+   * @param x Ｘ座標
+   * @param y Ｙ座標
+   * @return 色
+   */
+  private int getColor(int x, int y)
+  {
+    // 色判定済みのマップを使う場合は配列を参照するだけ
+    if (useLineMap)
+      return lineMap.getColor(x, y);
+
+    // 範囲外の場合は白とする
+    if (x < 0 || x >= lineMap.getWidth() ||
+        y < 0 || y >= lineMap.getHeight())
+      return Robot.WHITE;
+
+    // 画像から ARGB を取得して色判定
+    return LineMap.classify(lineMap.getImage().getRGB(x, y));
+  }
+  
+  /**
+   * 前進時のライン外の走行距離を直線ごとにまとめて求めるかどうか指定する（結果の比較用）．
+   * 距離場を使わない場合は，常に 1cm 刻みで判定する
+   * @param flag まとめて求める場合は true，1cm 刻みで判定する場合は false
+   */
+  public void setSweptMissEnabled(boolean flag)
+  {
+    useSweptMiss = flag;
+  }
+  
+  /**
+   * ライン上の判定に距離場を使うかどうか指定する（結果の比較用）
+   * @param flag 距離場を使う場合は true，従来の十字の走査を使う場合は false
+   */
+  public void setLineFieldEnabled(boolean flag)
+  {
+    useLineField = flag;
+  }
+  
+  /**
+   * 色判定済みのマップを使うかどうか指定する（結果の比較用）
+   * @param flag 色判定済みのマップを使う場合は true，画像を直接参照する場合は false
+   */
+  public void setLineMapEnabled(boolean flag)
+  {
+    useLineMap = flag;
+  }
+  
+  /**
+   * ロボットがライン上か判定する
+   * @return ロボットがライン上の場合は true を返す
+   */
+  public boolean isOnLine()
+  {
+    // 距離場を使う場合は，ロボットの中心からラインまでの距離を一度参照するだけでよい．
+    // ロボットの大きさ（60x60）に内接する円を判定範囲とするので，向きに依らず正しく判定できる
+    if (useLineField)
+      return lineMap.isOnLine((int)robotX, (int)robotY);
+
+    // ロボットの大きさは 60x60 （画像は 70x70 だが周りは余白）．中心を原点として，
+    // (1) (-30,0) 〜 (+30,0) まで５ドット刻み
+    // のいずれかがライン上であれば OK とする
+    for (int dx=-30; dx != +30; dx+=5) {
+
+      // 本来はロボットの向きに合わせて座標を回転させる必要があるが，
+      // 境界の判定なのでよしとする
+      int x = (int)(robotX + dx);
+      int y = (int)(robotY +  0);
+      
+      // 色が黒ならライン上
+      if (getColor(x, y) == Robot.BLACK)
+        return true;
+    }
+
+    // ロボットの大きさは 60x60 （画像は 70x70 だが周りは余白）．中心を原点として，
+    // (2) (0,+30) 〜 (0,-30) まで５ドット刻み
+    // のいずれかがライン上であれば OK とする
+    for (int dy=-30; dy != +30; dy+=5) {
+
+      // 本来はロボットの向きに合わせて座標を回転させる必要があるが，
+      // 境界の判定なのでよしとする
+      int x = (int)(robotX +  0);
+      int y = (int)(robotY + dy);
+      
+      // 色が黒ならライン上
+      if (getColor(x, y) == Robot.BLACK)
+        return true;
+    }
+
+    return false;    
+  }
+  
+  /** 色判定済みのマップ */
+  private final LineMap lineMap;
+  /** 試行の終了条件 */
+  private final Episode episode;
+  /** 色判定済みのマップを使うかどうか */
+  private boolean useLineMap = true;
+  /** ライン上の判定に距離場を使うかどうか */
+  private boolean useLineField = true;
+  /** ライン外の走行距離を直線ごとにまとめて求めるかどうか */
+  private boolean useSweptMiss = true;
+
+  /** 乱数の種（システムプロパティ linetracer.seed が無ければ毎回異なる） */
+  private long seed = Long.getLong("linetracer.seed", new java.util.SplittableRandom().nextLong());
+
+  /** ロボットの開始Ｘ座標 */
+  private double startX = 0.0;
+  /** ロボットの開始Ｙ座標 */
+  private double startY = 0.0;
+  /** ロボットの開始時の向き */
+  private double startDir = 0.0;
+  /** ロボットの X 座標 */
+  private double robotX = 0.0;
+  /** ロボットの Y 座標 */
+  private double robotY = 0.0;
+  /** ロボットの向き（１２時方向が 0 度） */
+  private double robotDir = 0.0;
+  /** ロボットの走行距離 */
+  private double robotRun = 0.0;
+  /** ロボットのミスをした走行距離 */
+  private double robotMiss = 0.0;
+  /** ロボットの姿勢の世代（姿勢が変わるたびに増える） */
+  private long poseGeneration = 0;
+  /** computeRotation() で求めた回転の係数（正弦） */
+  private double rotationSin = 0.0;
+  /** computeRotation() で求めた回転の係数（余弦） */
+  private double rotationCos = 1.0;
+
+  /** 光センサの値を姿勢ごとに使い回すかどうか */
+  private boolean useSensorCache = true;
+  /** 保存した光センサの値 */
+  private int sensorCache = 0;
+  /** 保存した光センサの値を読み取ったときの姿勢の世代 */
+  private long sensorCacheGeneration = -1;
+  /** 保存した値を使い回せた回数 */
+  private long sensorCacheHits = 0;
+  /** 実際に読み取った回数 */
+  private long sensorCacheMisses = 0;
+
+  /** 実環境から仮想環境での単位変換 (cm/px) */
+  final static double cmPerPixel = 0.225;
+}